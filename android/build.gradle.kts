@@ -26,6 +26,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    sourceSets {
+        getByName("test") {
+            // Shared with the benchmark module
+            java.srcDir("src/testFixtures/java")
+        }
+    }
 }
 
 dependencies {
@@ -36,6 +42,7 @@ dependencies {
     implementation("com.google.firebase:firebase-installations:17.2.0")
     implementation("com.google.firebase:firebase-messaging:23.4.0")
     testImplementation("junit:junit:4.13.2")
+    testImplementation("com.squareup.okhttp3:mockwebserver:3.12.12") // The okhttp version socket.io-client brings in
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
     implementation("com.google.code.gson:gson:2.10") // Use the latest version available
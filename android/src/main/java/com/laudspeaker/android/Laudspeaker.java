@@ -16,7 +16,6 @@ import androidx.core.app.NotificationManagerCompat;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
-import com.google.gson.Gson;
 
 import java.io.File;
 import java.time.LocalTime;
@@ -56,10 +55,10 @@ public class Laudspeaker extends FirebaseMessagingService {
             @Override
             public void onTokenReceived(String token) {
                 if (token != null && !token.trim().isEmpty() && config != null) {
-                    config.getLogger().log("Retrieved FCM token: " + token);
+                    config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Retrieved FCM token: {}", token);
                 } else {
                     if (config != null) {
-                        config.getLogger().log("getFCMToken called but token was empty.");
+                        config.getLogger().log(LaudspeakerLogLevel.WARN, "getFCMToken called but token was empty.");
                     }
                 }
             }
@@ -67,7 +66,7 @@ public class Laudspeaker extends FirebaseMessagingService {
             @Override
             public void onError(Exception exception) {
                 if (config != null) {
-                    config.getLogger().log("Failed to fetch FCM token: " + exception.toString());
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to fetch FCM token: {}", exception);
                 }
             }
         });
@@ -78,12 +77,12 @@ public class Laudspeaker extends FirebaseMessagingService {
         synchronized (setupLock) {
             try {
                 if (enabled) {
-                    config.getLogger().log("Setup called despite already being setup!");
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Setup called despite already being setup!");
                     return;
                 }
 
                 if (apiKey == config.getApiKey()) {
-                    config.getLogger().log("API Key: " + config.getApiKey() + " already has a Laudspeaker instance.");
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "API Key: {} already has a Laudspeaker instance.", config.getApiKey());
                 }
 
                 this.memoryPreferences = config.getCachePreferences();
@@ -105,9 +104,12 @@ public class Laudspeaker extends FirebaseMessagingService {
                 this.enabled = true;
 
                 queue.start();
+                if (config.getPrewarmConnection()) {
+                    api.prewarm();
+                }
 
             } catch (Throwable e) {
-                config.getLogger().log("Setup failed: " + e);
+                config.getLogger().log(LaudspeakerLogLevel.ERROR, "Setup failed: {}", e);
             }
         }
     }
@@ -190,12 +192,12 @@ public class Laudspeaker extends FirebaseMessagingService {
                     FirebaseMessaging.getInstance().getToken().addOnCompleteListener(task -> {
                         if (!task.isSuccessful()) {
                             Exception e = task.getException();
-                            config.getLogger().log("Fetching FCM registration token failed: " + e);
+                            config.getLogger().log(LaudspeakerLogLevel.WARN, "Fetching FCM registration token failed: {}", e);
 //                            callback.onError(e);
                         } else {
                             // Assuming the token is successfully retrieved and not null
                             fcmTokenCache = task.getResult();
-                            config.getLogger().log("Retrieved FCM Token: " + fcmTokenCache);
+                            config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Retrieved FCM Token: {}", fcmTokenCache);
                             setFcmToken(fcmTokenCache); // Make sure to implement this method to save the token
                             callback.onTokenReceived(fcmTokenCache);
                         }
@@ -221,40 +223,66 @@ public class Laudspeaker extends FirebaseMessagingService {
 
     private boolean isEnabled() {
         if (!enabled) {
-            if (config != null) config.getLogger().log("Setup isn't called.");
+            if (config != null) config.getLogger().log(LaudspeakerLogLevel.WARN, "Setup isn't called.");
         }
         return enabled;
     }
 
     public void capture(String event, Map<String, Object> properties) {
+        capture(event, properties, null);
+    }
+
+    /**
+     * Captures an event without boxing its properties or copying them into a map. The properties
+     * are shared with the queue and cannot be changed afterwards. A configured properties sanitizer
+     * still gets them as a map.
+     */
+    public void capture(String event, LaudspeakerProperties properties) {
+        capture(event, null, properties);
+    }
+
+    private void capture(String event, Map<String, Object> properties, LaudspeakerProperties compactProperties) {
         try {
             if (!isEnabled()) {
-                config.getLogger().log("capture call not allowed, Laudspeaker instance not enabled.");
+                if (config != null) {
+                    config.getMetrics().increment(LaudspeakerMetric.EVENTS_REJECTED, 1);
+                }
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "capture call not allowed, Laudspeaker instance not enabled.");
                 return;
             }
+            long started = System.nanoTime();
 
             String customerId = getCustomerId();
 
             if (customerId == null || customerId.trim().isEmpty()) {
                 if (config != null) {
-                    config.getLogger().log("capture call not allowed, customer ID is invalid: " + customerId);
+                    config.getMetrics().increment(LaudspeakerMetric.EVENTS_REJECTED, 1);
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "capture call not allowed, customer ID is invalid: {}", customerId);
                 }
                 return;
             }
 
-            Map<String, Object> mergedProperties = buildProperties(properties);
-            Map<String, Object> sanitizedProperties = config != null && config.getPropertiesSanitizer() != null ? config.getPropertiesSanitizer().sanitize(mergedProperties) : mergedProperties;
+            LaudspeakerEvent laudspeakerEvent;
+            if (compactProperties != null && (config == null || config.getPropertiesSanitizer() == null)) {
+                laudspeakerEvent = new LaudspeakerEvent(event, customerId, compactProperties);
+            } else {
+                Map<String, Object> mergedProperties = compactProperties != null ? compactProperties.toMap() : buildProperties(properties);
+                Map<String, Object> sanitizedProperties = config != null && config.getPropertiesSanitizer() != null ? config.getPropertiesSanitizer().sanitize(mergedProperties) : mergedProperties;
 
-            LaudspeakerEvent laudspeakerEvent = new LaudspeakerEvent(event, customerId, sanitizedProperties);
+                laudspeakerEvent = new LaudspeakerEvent(event, customerId, sanitizedProperties);
+            }
 
 
             if (queue != null) {
+                config.getTracer().captured(laudspeakerEvent);
                 queue.add(laudspeakerEvent);
+                config.getMetrics().increment(LaudspeakerMetric.EVENTS_CAPTURED, 1);
+                config.getMetrics().record(LaudspeakerMetric.CAPTURE_LATENCY, System.nanoTime() - started);
             }
 
         } catch (Throwable e) {
             if (config != null) {
-                config.getLogger().log("Capture failed: " + e);
+                config.getLogger().log(LaudspeakerLogLevel.ERROR, "Capture failed: {}", e);
             }
         }
     }
@@ -270,7 +298,7 @@ public class Laudspeaker extends FirebaseMessagingService {
 
         if (primaryKey == null || primaryKey.trim().isEmpty()) {
             if (config != null) {
-                config.getLogger().log("identify call not allowed, primary key is invalid: " + primaryKey);
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "identify call not allowed, primary key is invalid: {}", primaryKey);
             }
             return;
         } else {
@@ -311,7 +339,7 @@ public class Laudspeaker extends FirebaseMessagingService {
                     capture("$fcm", props);
                 } else {
                     if (config != null) {
-                        config.getLogger().log("sendFcmToken called but token was empty.");
+                        config.getLogger().log(LaudspeakerLogLevel.WARN, "sendFcmToken called but token was empty.");
                     }
                 }
             }
@@ -319,7 +347,7 @@ public class Laudspeaker extends FirebaseMessagingService {
             @Override
             public void onError(Exception exception) {
                 if (config != null) {
-                    config.getLogger().log("Failed to fetch FCM token: " + exception.toString());
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to fetch FCM token: {}", exception);
                 }
             }
         });
@@ -350,7 +378,7 @@ public class Laudspeaker extends FirebaseMessagingService {
 
             } catch (Throwable e) {
                 if (config != null) {
-                    config.getLogger().log("Close failed: " + e);
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Close failed: {}", e);
                 }
             }
         }
@@ -361,7 +389,7 @@ public class Laudspeaker extends FirebaseMessagingService {
             return;
         }
 
-        List<String> except = Arrays.asList(LaudspeakerPreferences.VERSION, LaudspeakerPreferences.BUILD);
+        List<String> except = Arrays.asList(LaudspeakerPreferences.VERSION, LaudspeakerPreferences.BUILD, LaudspeakerPreferences.BATCH_SEQUENCE);
         getPreferences().clear(except);
         if (queue != null) {
             queue.clear();
@@ -399,8 +427,7 @@ public class Laudspeaker extends FirebaseMessagingService {
     private void handleDataMessage(Map<String, String> data) {
         boolean isQuietHour = false;
 
-        Gson gson = new Gson();
-        QuietHours quietHours = gson.fromJson(data.get("quietHours"), QuietHours.class);
+        QuietHours quietHours = LaudspeakerTypeAdapterFactory.getSerializer().fromJson(data.get("quietHours"), QuietHours.class);
 
         System.out.println(quietHours);
 
@@ -435,6 +462,8 @@ public class Laudspeaker extends FirebaseMessagingService {
         config.setNetworkStatus(config.getNetworkStatus() == null ? new LaudspeakerNetworkStatus(context) : config.getNetworkStatus());
         config.setSdkVersion("1");
         config.setSdkName("laudspeaker-android");
+        // The service may be stopped soon after the push is handled, send the delivery right away
+        config.setFlushAt(1);
         this.setup(config);
         this.capture("$delivered", deliveryMessage);
 
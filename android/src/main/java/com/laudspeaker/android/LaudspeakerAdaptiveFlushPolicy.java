@@ -0,0 +1,98 @@
+package com.laudspeaker.android;
+
+/**
+ * Default flush policy, flushes once a full batch or flushBytes of events are queued, or once the
+ * oldest event is maxEventAgeMillis old.
+ * The batch size follows the measured round trips: a batch that took longer than
+ * targetRoundTripMillis scales the next ones down to fit, full batches that came back in less
+ * than half of it grow the size again up to maxBatchSize, and failed uploads halve it. Fast
+ * networks end up with fewer and fuller requests, slow ones with smaller requests that are
+ * cheaper to retry.
+ * The measured wire size of an event also caps a batch at about flushBytes, so larger events
+ * make for batches of fewer events.
+ */
+public class LaudspeakerAdaptiveFlushPolicy implements LaudspeakerFlushPolicy {
+    private static final double ALPHA = 0.3;
+    private static final double GROWTH = 1.5;
+
+    private final int minBatchSize;
+    private final long maxEventAgeMillis;
+    private final long flushBytes;
+    private final long targetRoundTripMillis;
+
+    // Adapted batch size, negative until the first measurement
+    private double batchLimit = -1;
+    private double roundTripMillis = 0;
+    private double bytesPerEvent = 0;
+
+    public LaudspeakerAdaptiveFlushPolicy() {
+        this(10, 10_000, 256 * 1024, 2_000);
+    }
+
+    public LaudspeakerAdaptiveFlushPolicy(int minBatchSize, long maxEventAgeMillis, long flushBytes, long targetRoundTripMillis) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxEventAgeMillis = maxEventAgeMillis;
+        this.flushBytes = flushBytes;
+        this.targetRoundTripMillis = targetRoundTripMillis;
+    }
+
+    @Override
+    public synchronized boolean shouldFlush(int queuedEvents, long queuedBytes, long oldestEventAgeMillis, int maxBatchSize) {
+        if (queuedEvents <= 0) {
+            return false;
+        }
+        return oldestEventAgeMillis >= maxEventAgeMillis
+                || queuedEvents >= batchSize(maxBatchSize)
+                || queuedBytes >= flushBytes;
+    }
+
+    @Override
+    public synchronized int batchSize(int maxBatchSize) {
+        int max = Math.max(1, maxBatchSize);
+        double limit = batchLimit < 0 ? max : batchLimit;
+        if (bytesPerEvent > 0) {
+            limit = Math.min(limit, flushBytes / bytesPerEvent);
+        }
+        return (int) Math.max(Math.min(minBatchSize, max), Math.min(max, limit));
+    }
+
+    @Override
+    public synchronized void onBatchSent(int events, long bytes, long roundTripMillis) {
+        if (events <= 0) {
+            return;
+        }
+        this.roundTripMillis = average(this.roundTripMillis, roundTripMillis);
+        this.bytesPerEvent = average(this.bytesPerEvent, (double) bytes / events);
+
+        if (roundTripMillis > targetRoundTripMillis) {
+            // Scale from the batch that was measured, the request time grows with its size
+            batchLimit = Math.max(minBatchSize, events * (double) targetRoundTripMillis / roundTripMillis);
+        } else if (batchLimit >= 0 && roundTripMillis < targetRoundTripMillis / 2 && events >= (int) batchLimit) {
+            batchLimit *= GROWTH;
+        }
+    }
+
+    @Override
+    public synchronized void onBatchFailed(int events, long bytes) {
+        double current = batchLimit < 0 ? events : batchLimit;
+        batchLimit = Math.max(minBatchSize, current / 2);
+    }
+
+    /**
+     * Smoothed round trip of the recent uploads in milliseconds, 0 before the first one.
+     */
+    public synchronized double getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    /**
+     * Smoothed wire size of an event in the recent uploads, 0 before the first one.
+     */
+    public synchronized double getBytesPerEvent() {
+        return bytesPerEvent;
+    }
+
+    private static double average(double current, double sample) {
+        return current <= 0 ? sample : current + ALPHA * (sample - current);
+    }
+}
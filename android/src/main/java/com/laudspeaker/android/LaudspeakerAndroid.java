@@ -22,6 +22,9 @@ public class LaudspeakerAndroid {
         LaudspeakerPreferences preferences = config.getCachePreferences() == null ? new LaudspeakerPreferences(context) : config.getCachePreferences();
         config.setCachePreferences(preferences);
         config.setNetworkStatus(config.getNetworkStatus() == null ? new LaudspeakerNetworkStatus(context) : config.getNetworkStatus());
+        if (config.isBackgroundDrainEnabled() && config.getDrainScheduler() == null) {
+            config.setDrainScheduler(new LaudspeakerDrainJobScheduler(context, config));
+        }
         config.setSdkVersion("1");
         config.setSdkName("laudspeaker-android");
     }
@@ -1,7 +1,11 @@
 package com.laudspeaker.android;
 
 public class LaudspeakerAndroidConfig extends LaudspeakerConfig {
-
+    // Off by default, when on a JobScheduler job uploads what the queue still holds after the app is gone
+    private boolean backgroundDrainEnabled = false;
+    private boolean drainRequiresUnmeteredNetwork = false;
+    private boolean drainRequiresCharging = false;
+    private int drainBatchSize = 500;
 
     public LaudspeakerAndroidConfig(Class<?> targetActivityClass) {
         this(defaultKey, defaultHost, targetActivityClass, false, false, false);
@@ -20,5 +24,36 @@ public class LaudspeakerAndroidConfig extends LaudspeakerConfig {
         super(apiKey, host, targetActivityClass, updatedKey, updatedHost, updatedClass);
     }
 
+    public boolean isBackgroundDrainEnabled() {
+        return backgroundDrainEnabled;
+    }
+
+    public void setBackgroundDrainEnabled(boolean backgroundDrainEnabled) {
+        this.backgroundDrainEnabled = backgroundDrainEnabled;
+    }
+
+    public boolean getDrainRequiresUnmeteredNetwork() {
+        return drainRequiresUnmeteredNetwork;
+    }
+
+    public void setDrainRequiresUnmeteredNetwork(boolean drainRequiresUnmeteredNetwork) {
+        this.drainRequiresUnmeteredNetwork = drainRequiresUnmeteredNetwork;
+    }
+
+    public boolean getDrainRequiresCharging() {
+        return drainRequiresCharging;
+    }
+
+    public void setDrainRequiresCharging(boolean drainRequiresCharging) {
+        this.drainRequiresCharging = drainRequiresCharging;
+    }
+
+    public int getDrainBatchSize() {
+        return drainBatchSize;
+    }
+
+    public void setDrainBatchSize(int drainBatchSize) {
+        this.drainBatchSize = drainBatchSize;
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.laudspeaker.android;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+/**
+ * Follows the default network through ConnectivityManager.registerDefaultNetworkCallback.
+ */
+public class LaudspeakerAndroidConnectivitySource implements LaudspeakerConnectivitySource {
+    private final Context context;
+    private ConnectivityManager.NetworkCallback callback = null;
+
+    public LaudspeakerAndroidConnectivitySource(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public synchronized LaudspeakerNetworkState register(Listener listener) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return LaudspeakerNetworkState.DISCONNECTED;
+        }
+        unregister();
+
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                listener.onNetworkChanged(stateOf(capabilities));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                listener.onNetworkChanged(LaudspeakerNetworkState.DISCONNECTED);
+            }
+        };
+        try {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } catch (RuntimeException e) {
+            // Apps are limited in the number of callbacks they can hold, fall back to assuming connected
+            callback = null;
+            return new LaudspeakerNetworkState(true, false, LaudspeakerNetworkTransport.OTHER);
+        }
+
+        Network network = connectivityManager.getActiveNetwork();
+        return network != null ? stateOf(connectivityManager.getNetworkCapabilities(network)) : LaudspeakerNetworkState.DISCONNECTED;
+    }
+
+    @Override
+    public synchronized void unregister() {
+        if (callback == null) {
+            return;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(callback);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        callback = null;
+    }
+
+    private static LaudspeakerNetworkState stateOf(NetworkCapabilities capabilities) {
+        if (capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return LaudspeakerNetworkState.DISCONNECTED;
+        }
+        LaudspeakerNetworkTransport transport;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            transport = LaudspeakerNetworkTransport.WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            transport = LaudspeakerNetworkTransport.CELLULAR;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            transport = LaudspeakerNetworkTransport.ETHERNET;
+        } else {
+            transport = LaudspeakerNetworkTransport.OTHER;
+        }
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        return new LaudspeakerNetworkState(true, metered, transport);
+    }
+}
@@ -3,66 +3,244 @@ package com.laudspeaker.android;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
 
 public class LaudspeakerApi {
+    private static final long ERROR_BODY_LIMIT = 4096;
+
     private final LaudspeakerConfig config;
     private final MediaType mediaType;
     private final OkHttpClient client;
+    private volatile LaudspeakerCompression compression;
+    private volatile LaudspeakerApiSnapshot snapshot = null;
 
     public LaudspeakerApi(LaudspeakerConfig config) {
         this.config = config;
         this.mediaType = MediaType.parse("application/json; charset=utf-8");
-        this.client = new OkHttpClient.Builder().build();
+        this.client = LaudspeakerHttpClient.shared();
+        this.compression = config.getCompression() != null ? config.getCompression() : LaudspeakerCompression.NONE;
     }
 
-    private String getTheHost() {
-        if (((String) config.getCachePreferences().getValue(LaudspeakerPreferences.HOST, null)).endsWith("/")) {
-            return ((String) config.getCachePreferences().getValue(LaudspeakerPreferences.HOST, null)).substring(0, ((String) config.getCachePreferences().getValue(LaudspeakerPreferences.HOST, null)).length() - 1);
-        } else {
-            return (String) config.getCachePreferences().getValue(LaudspeakerPreferences.HOST, null);
+    /**
+     * Host, API key and FCM token as of the last change of the preferences, rebuilt only when
+     * their revision moves.
+     */
+    public LaudspeakerApiSnapshot snapshot() {
+        LaudspeakerApiSnapshot current = snapshot;
+        if (current == null || !current.isCurrent(config)) {
+            current = LaudspeakerApiSnapshot.of(config);
+            snapshot = current;
         }
+        return current;
+    }
+
+    /**
+     * Opens a connection to the host ahead of the first upload, so DNS, TCP and TLS are done by
+     * the time a batch is ready. The connection stays in the shared pool, nothing waits for this.
+     */
+    public void prewarm() {
+        HttpUrl url = snapshot().getBatchUrl();
+        if (url == null) {
+            return;
+        }
+        Request request = new Request.Builder().url(url.resolve("/")).head().header("User-Agent", config.getUserAgent()).build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Connection pre-warm failed: {}", e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+
+    private HttpUrl batchUrl(LaudspeakerApiSnapshot snapshot) throws IOException {
+        HttpUrl url = snapshot.getBatchUrl();
+        if (url == null) {
+            // Kept queued until a host is set
+            throw new IOException("No valid host is set: " + snapshot.getHost());
+        }
+        return url;
     }
 
     public void send(List<LaudspeakerEvent> events) throws LaudspeakerApiError, IOException {
         LaudspeakerBatchEvent batch = new LaudspeakerBatchEvent(events);
         batch.setSentAt(config.getDateProvider().currentDate());
 
-        Request request = makeRequest(getTheHost() + "/events/batch/", outputStream -> {
+        LaudspeakerApiSnapshot snapshot = snapshot();
+        post(snapshot, batchUrl(snapshot), -1, -1, null, sink -> {
+            OutputStream outputStream = sink.outputStream();
             OutputStreamWriter writer = new OutputStreamWriter(outputStream);
             config.getSerializer().toJson(batch, writer);
             writer.flush();
+            outputStream.flush();
+        });
+    }
+
+    /**
+     * Streams a sealed batch file into the request body, followed by the sent_at field.
+     */
+    public void send(LaudspeakerSealedBatch batch) throws LaudspeakerApiError, IOException {
+        byte[] suffix = (",\"sent_at\":\"" + LaudspeakerJsonFormat.formatIsoDate(config.getDateProvider().currentTimeMillis()) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        LaudspeakerApiSnapshot snapshot = snapshot();
+        String idempotencyKey = batch.getIdempotencyKey() != null ? batch.getIdempotencyKey().toString() : null;
+        post(snapshot, batchUrl(snapshot), batch.getByteCount() + suffix.length, batch.getSequence(), idempotencyKey, sink -> {
+            try (Source source = Okio.source(batch.getFile())) {
+                sink.writeAll(source);
+            }
+            sink.write(suffix);
         });
+    }
+
+    /**
+     * Posts the body with the configured compression, if the server rejects the encoding with a 415,
+     * or a 400 that names the content encoding, the request is repeated uncompressed. A
+     * dictionary-compressed body goes out as plain deflate, so any 400 to it is tried again: a
+     * server without the dictionary cannot inflate it and rarely says why. Compression stays off
+     * for this instance only if the uncompressed request goes through, a 400 for the batch itself
+     * leaves it on.
+     */
+    private void post(LaudspeakerApiSnapshot snapshot, HttpUrl url, long contentLength, long sequence, String idempotencyKey, IOConsumer<BufferedSink> writer) throws LaudspeakerApiError, IOException {
+        LaudspeakerCompression compression = this.compression;
+        try {
+            execute(makeRequest(snapshot, url, contentLength, sequence, idempotencyKey, compression, writer));
+        } catch (LaudspeakerApiError e) {
+            if (compression == LaudspeakerCompression.NONE || !rejectsEncoding(e, compression)) {
+                throw e;
+            }
+            execute(makeRequest(snapshot, url, contentLength, sequence, idempotencyKey, LaudspeakerCompression.NONE, writer));
+            if (this.compression == compression) {
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Server rejected {} request body, falling back to uncompressed uploads.", compression);
+                this.compression = LaudspeakerCompression.NONE;
+            }
+        }
+    }
 
+    private static boolean rejectsEncoding(LaudspeakerApiError error, LaudspeakerCompression compression) {
+        if (error.getStatusCode() == 415) {
+            return true;
+        }
+        if (error.getStatusCode() != 400) {
+            return false;
+        }
+        if (compression == LaudspeakerCompression.DEFLATE_DICTIONARY) {
+            return true;
+        }
+        if (error.getBody() == null) {
+            return false;
+        }
+        String body;
+        try {
+            body = error.getBody().string().toLowerCase(Locale.ROOT);
+        } catch (IOException e) {
+            return false;
+        }
+        String encoding = compression == LaudspeakerCompression.GZIP ? "gzip" : "deflate";
+        return body.contains("encoding") || body.contains(encoding);
+    }
+
+    private void execute(Request request) throws LaudspeakerApiError, IOException {
+        long started = System.nanoTime();
+        boolean successful = false;
         try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful())
-                throw new LaudspeakerApiError(response.code(), response.message(), response.body());
+            if (!response.isSuccessful()) {
+                // A 400 is checked for an encoding complaint after the response is closed
+                ResponseBody body = response.code() == 400 ? response.peekBody(ERROR_BODY_LIMIT) : response.body();
+                throw new LaudspeakerApiError(response.code(), response.message(), body);
+            }
+            successful = true;
+        } finally {
+            config.getMetrics().record(LaudspeakerMetric.REQUEST_LATENCY, System.nanoTime() - started);
+            if (!successful) {
+                config.getMetrics().increment(LaudspeakerMetric.REQUESTS_FAILED, 1);
+            }
         }
     }
 
-    private Request makeRequest(String url, IOConsumer<OutputStream> serializer) throws IOException {
+    private Request makeRequest(LaudspeakerApiSnapshot snapshot, HttpUrl url, long contentLength, long sequence, String idempotencyKey, LaudspeakerCompression compression, IOConsumer<BufferedSink> writer) throws IOException {
         RequestBody requestBody = new RequestBody() {
             @Override
             public MediaType contentType() {
                 return mediaType;
             }
 
+            @Override
+            public long contentLength() {
+                return compression == LaudspeakerCompression.NONE ? contentLength : -1;
+            }
+
             @Override
             public void writeTo(BufferedSink sink) throws IOException {
-                OutputStream outputStream = sink.outputStream();
-                serializer.accept(outputStream);
-                outputStream.flush();
+                if (compression == LaudspeakerCompression.NONE) {
+                    writer.accept(sink);
+                    return;
+                }
+                // Closing ends the deflater, which holds native memory, also when writing fails
+                try (BufferedSink compressed = Okio.buffer(compressingSink(compression, sink))) {
+                    writer.accept(compressed);
+                }
             }
         };
 
-        return new Request.Builder().url(url).header("Authorization", "Api-Key " + (String) config.getCachePreferences().getValue(LaudspeakerPreferences.API_KEY, null)).header("User-Agent", config.getUserAgent()).post(requestBody).build();
+        Request.Builder builder = new Request.Builder().url(url).headers(snapshot.getHeaders());
+        if (sequence >= 0) {
+            builder.header("X-Laudspeaker-Batch-Sequence", Long.toString(sequence));
+        }
+        if (idempotencyKey != null) {
+            builder.header("Idempotency-Key", idempotencyKey);
+        }
+        switch (compression) {
+            case GZIP:
+                builder.header("Content-Encoding", "gzip");
+                break;
+            case DEFLATE:
+                builder.header("Content-Encoding", "deflate");
+                break;
+            case DEFLATE_DICTIONARY:
+                builder.header("Content-Encoding", "deflate");
+                builder.header("X-Laudspeaker-Dictionary", LaudspeakerCompressionDictionary.VERSION);
+                break;
+            default:
+                break;
+        }
+        return builder.post(requestBody).build();
+    }
+
+    private static Sink compressingSink(LaudspeakerCompression compression, Sink sink) {
+        switch (compression) {
+            case GZIP:
+                return new GzipSink(sink);
+            case DEFLATE_DICTIONARY:
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                deflater.setDictionary(LaudspeakerCompressionDictionary.getBytes());
+                return new DeflaterSink(sink, deflater);
+            case DEFLATE:
+            default:
+                return new DeflaterSink(sink, new Deflater(Deflater.DEFAULT_COMPRESSION));
+        }
     }
 
     @FunctionalInterface
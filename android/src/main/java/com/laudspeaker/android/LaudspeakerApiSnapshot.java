@@ -0,0 +1,79 @@
+package com.laudspeaker.android;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+
+/**
+ * Immutable view of the preferences the request path needs, with the batch URL and the common
+ * headers built once. LaudspeakerApi swaps in a new snapshot when the preferences revision moves.
+ */
+public final class LaudspeakerApiSnapshot {
+    private final LaudspeakerPreferences preferences;
+    private final int revision;
+    private final String host;
+    private final String apiKey;
+    private final String userAgent;
+    private final String fcmToken;
+    private final HttpUrl batchUrl;
+    private final Headers headers;
+
+    private LaudspeakerApiSnapshot(LaudspeakerPreferences preferences, int revision, String host, String apiKey, String userAgent, String fcmToken) {
+        this.preferences = preferences;
+        this.revision = revision;
+        this.host = host;
+        this.apiKey = apiKey;
+        this.userAgent = userAgent;
+        this.fcmToken = fcmToken;
+        this.batchUrl = host != null ? HttpUrl.parse(trimTrailingSlash(host) + "/events/batch/") : null;
+        this.headers = new Headers.Builder().add("Authorization", "Api-Key " + apiKey).add("User-Agent", userAgent).build();
+    }
+
+    public static LaudspeakerApiSnapshot of(LaudspeakerConfig config) {
+        LaudspeakerPreferences preferences = config.getCachePreferences();
+        // Read the revision first, a change racing with the reads below moves it again
+        int revision = preferences.getRevision();
+        return new LaudspeakerApiSnapshot(
+                preferences,
+                revision,
+                (String) preferences.getValue(LaudspeakerPreferences.HOST, null),
+                (String) preferences.getValue(LaudspeakerPreferences.API_KEY, null),
+                config.getUserAgent(),
+                (String) preferences.getValue(LaudspeakerPreferences.FCM_TOKEN, null));
+    }
+
+    public boolean isCurrent(LaudspeakerConfig config) {
+        LaudspeakerPreferences current = config.getCachePreferences();
+        return current == preferences && current.getRevision() == revision;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public String getFcmToken() {
+        return fcmToken;
+    }
+
+    /*
+    Null if no host is set or it is not a valid http(s) URL.
+     */
+    public HttpUrl getBatchUrl() {
+        return batchUrl;
+    }
+
+    public Headers getHeaders() {
+        return headers;
+    }
+
+    private static String trimTrailingSlash(String host) {
+        return host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+    }
+}
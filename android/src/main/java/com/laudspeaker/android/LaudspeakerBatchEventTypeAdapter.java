@@ -0,0 +1,74 @@
+package com.laudspeaker.android;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class LaudspeakerBatchEventTypeAdapter extends TypeAdapter<LaudspeakerBatchEvent> {
+    private final TypeAdapter<LaudspeakerEvent> eventAdapter;
+    private final TypeAdapter<Date> dateAdapter;
+
+    public LaudspeakerBatchEventTypeAdapter(TypeAdapter<LaudspeakerEvent> eventAdapter, TypeAdapter<Date> dateAdapter) {
+        this.eventAdapter = eventAdapter;
+        this.dateAdapter = dateAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, LaudspeakerBatchEvent batch) throws IOException {
+        if (batch == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (batch.getBatch() != null) {
+            out.name("batch").beginArray();
+            for (LaudspeakerEvent event : batch.getBatch()) {
+                eventAdapter.write(out, event);
+            }
+            out.endArray();
+        }
+        if (batch.getSentAt() != null) {
+            out.name("sent_at");
+            dateAdapter.write(out, batch.getSentAt());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public LaudspeakerBatchEvent read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<LaudspeakerEvent> events = null;
+        Date sentAt = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("batch") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                events = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    events.add(eventAdapter.read(in));
+                }
+                in.endArray();
+            } else if (name.equals("sent_at")) {
+                sentAt = dateAdapter.read(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        LaudspeakerBatchEvent batch = new LaudspeakerBatchEvent(events);
+        batch.setSentAt(sentAt);
+        return batch;
+    }
+}
@@ -0,0 +1,166 @@
+package com.laudspeaker.android;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only journal of the batches sealed from the queue storage, so a restart knows which of
+ * them the server already acknowledged.
+ * A batch is journaled before it is first sent as [byte SEALED][long sequence][16 byte idempotency key]
+ * [int records][16 byte first event id][16 byte last event id], and [byte ACKED][long sequence] is
+ * appended once the server accepted it. An entry torn by a crash ends the journal.
+ */
+public class LaudspeakerBatchJournal {
+    private static final int SEALED = 1;
+    private static final int ACKED = 2;
+
+    private final File file;
+    private final LaudspeakerDurability durability;
+
+    public LaudspeakerBatchJournal(File file, LaudspeakerDurability durability) {
+        this.file = file;
+        this.durability = durability;
+    }
+
+    public void sealed(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(61);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(SEALED);
+        writeEntry(output, entry);
+        append(bytes.toByteArray());
+    }
+
+    public void acked(long sequence) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(ACKED);
+        output.writeLong(sequence);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * @return the journaled batches in the order they were sealed, acknowledgements of batches
+     * that are not in the journal are left out.
+     */
+    public List<Entry> read() throws IOException {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int type = input.readByte();
+                if (type == SEALED) {
+                    Entry entry = new Entry(input.readLong(), readUuid(input), input.readInt(), readUuid(input), readUuid(input));
+                    entries.put(entry.sequence, entry);
+                } else if (type == ACKED) {
+                    Entry entry = entries.get(input.readLong());
+                    if (entry != null) {
+                        entry.acknowledged = true;
+                    }
+                } else {
+                    throw new IOException("Unknown journal entry " + type);
+                }
+            }
+        } catch (EOFException ignored) {
+            // End of the journal, or an entry torn by a crash that nothing was sent for yet
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Replaces the journal with the given batches, through a temporary file so a crash keeps either version.
+     */
+    public void rewrite(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            clear();
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 70);
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (Entry entry : entries) {
+            output.writeByte(SEALED);
+            writeEntry(output, entry);
+            if (entry.acknowledged) {
+                output.writeByte(ACKED);
+                output.writeLong(entry.sequence);
+            }
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile writer = new RandomAccessFile(temporary, "rw")) {
+            writer.setLength(0);
+            writer.write(bytes.toByteArray());
+            if (durability != LaudspeakerDurability.NONE) {
+                writer.getFD().sync();
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    public long length() {
+        return file.length();
+    }
+
+    public void clear() {
+        file.delete();
+    }
+
+    private void append(byte[] entry) throws IOException {
+        try (RandomAccessFile writer = new RandomAccessFile(file, "rw")) {
+            writer.seek(writer.length());
+            writer.write(entry);
+            if (durability != LaudspeakerDurability.NONE) {
+                writer.getFD().sync();
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, Entry entry) throws IOException {
+        output.writeLong(entry.sequence);
+        writeUuid(output, entry.idempotencyKey);
+        output.writeInt(entry.records);
+        writeUuid(output, entry.firstEventId);
+        writeUuid(output, entry.lastEventId);
+    }
+
+    private static void writeUuid(DataOutputStream output, UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    public static final class Entry {
+        final long sequence;
+        final UUID idempotencyKey;
+        // Records the batch was sealed from, found again by the event IDs at both ends
+        final int records;
+        final UUID firstEventId;
+        final UUID lastEventId;
+        boolean acknowledged = false;
+
+        public Entry(long sequence, UUID idempotencyKey, int records, UUID firstEventId, UUID lastEventId) {
+            this.sequence = sequence;
+            this.idempotencyKey = idempotencyKey;
+            this.records = records;
+            this.firstEventId = firstEventId;
+            this.lastEventId = lastEventId;
+        }
+    }
+}
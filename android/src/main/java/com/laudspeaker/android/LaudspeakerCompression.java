@@ -0,0 +1,20 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerCompression {
+    NONE,
+    /*
+    Content-Encoding: gzip
+     */
+    GZIP,
+    /*
+    Content-Encoding: deflate (zlib stream)
+     */
+    DEFLATE,
+    /*
+    Content-Encoding: deflate primed with LaudspeakerCompressionDictionary, announced through the
+    X-Laudspeaker-Dictionary header so small batches compress well too. Any 400 to such a body
+    is retried uncompressed, a server without the dictionary cannot tell it apart from bad JSON.
+    Compression turns off only if the retry goes through.
+     */
+    DEFLATE_DICTIONARY,
+}
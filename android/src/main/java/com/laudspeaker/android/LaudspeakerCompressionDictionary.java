@@ -0,0 +1,31 @@
+package com.laudspeaker.android;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Preset deflate dictionary built from the /events/batch/ schema.
+ * The server has to be primed with the same bytes for the announced VERSION, deflate favours
+ * matches near the end of the dictionary so the most repeated fragments come last.
+ */
+public final class LaudspeakerCompressionDictionary {
+    public static final String VERSION = "1";
+
+    private static final String CONTENT = ""
+            + "\"customerID\":\"\"stepID\":\"\"templateID\":\"\"messageID\":\"\"workspaceID\":\""
+            + "\"event\":\"$opened\"\"event\":\"$delivered\"\"source\":\"message\""
+            + "\"event\":\"$set\"\"event\":\"$identify\"\"distinct_id\":\""
+            + "\"event\":\"$fcm\"\"payload\":{\"androidDeviceToken\":\""
+            + "{\"batch\":[\"sent_at\":\""
+            + "\"timestamp\":\"\"uuid\":\""
+            + "\"source\":\"mobile\",\"$fcm\":{\"androidDeviceToken\":\""
+            + "},{\"event\":\"\",\"correlationKey\":\"_id\",\"correlationValue\":\"\",\"payload\":{";
+
+    private static final byte[] BYTES = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+    private LaudspeakerCompressionDictionary() {
+    }
+
+    public static byte[] getBytes() {
+        return BYTES.clone();
+    }
+}
@@ -12,19 +12,43 @@ public class LaudspeakerConfig {
     private String apiKey = defaultKey;
     private String host = defaultHost;
     private boolean debug = false;
-    private int flushAt = 1;
+    // Recorded below debug, DEBUG whenever debug is on
+    private LaudspeakerLogLevel logLevel = LaudspeakerLogLevel.WARN;
+    private int logBufferSize = 64;
+    // Share of captured events traced through the pipeline, 0 turns tracing off
+    private double traceSampleRate = 0;
+    // 0 leaves flushing to the flush policy, a positive value also flushes at that many events
+    private int flushAt = 0;
     private int maxQueueSize = 1000;
+    // Merges a $set or $identify into the same update queued right before it
+    private boolean coalesceUpdates = true;
     private int maxBatchSize = 50;
+    private long maxQueueBytes = 8 * 1024 * 1024;
+    private long maxBatchBytes = 512 * 1024;
+    private int maxInFlightBatches = 4;
+    private boolean prewarmConnection = false;
     private int flushIntervalSeconds = 1;
+    private int segmentSizeBytes = 1024 * 1024;
+    private LaudspeakerQueueStorageType queueStorageType = LaudspeakerQueueStorageType.SEGMENTED_LOG;
+    private int ringCapacityBytes = 4 * 1024 * 1024;
+    private LaudspeakerCompression compression = LaudspeakerCompression.NONE;
+    private int stagingCapacity = 1024;
+    private LaudspeakerOverflowPolicy overflowPolicy = LaudspeakerOverflowPolicy.DROP_NEWEST;
+    private LaudspeakerDurability durability = LaudspeakerDurability.NONE;
+    private int groupCommitWindowMillis = 10;
+    private LaudspeakerFlushPolicy flushPolicy = new LaudspeakerAdaptiveFlushPolicy();
+    private LaudspeakerMetrics metrics = new LaudspeakerNoopMetrics();
     // Internal usage
     private LaudspeakerLogger logger = new LaudspeakerLogger(this);
-    private Gson serializer = new Gson();
+    private LaudspeakerEventTracer tracer = new LaudspeakerEventTracer(this);
+    private Gson serializer = LaudspeakerTypeAdapterFactory.getSerializer();
     private String sdkName = "laudspeaker-android";
     private String sdkVersion = "1"; // Adjust this according to your build system
     private String userAgent = sdkName + "/" + sdkVersion;
     private String storagePrefix = null;
     private LaudspeakerPreferences cachePreferences = null;
     private LaudspeakerNetworkStatus networkStatus = null;
+    private LaudspeakerDrainScheduler drainScheduler = null;
     private LaudspeakerDateProvider dateProvider = new LaudspeakerDateProvider();
     private LaudspeakerPropertiesSanitizer sanitizer;
 
@@ -67,10 +91,18 @@ public class LaudspeakerConfig {
         return dateProvider;
     }
 
+    public void setDateProvider(LaudspeakerDateProvider dateProvider) {
+        this.dateProvider = dateProvider;
+    }
+
     public int getFlushIntervalSeconds() {
         return flushIntervalSeconds;
     }
 
+    public void setFlushIntervalSeconds(int flushIntervalSeconds) {
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
     public String getHost() {
         return host;
     }
@@ -87,6 +119,31 @@ public class LaudspeakerConfig {
         return flushAt;
     }
 
+    /**
+     * Flushes as soon as flushAt events are queued, on top of the flush policy. 0, the default,
+     * leaves it to the policy. The default used to be 1, which sent every event right away,
+     * set 1 to keep that.
+     */
+    public void setFlushAt(int flushAt) {
+        this.flushAt = flushAt;
+    }
+
+    public LaudspeakerFlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(LaudspeakerFlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public LaudspeakerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(LaudspeakerMetrics metrics) {
+        this.metrics = metrics != null ? metrics : new LaudspeakerNoopMetrics();
+    }
+
     public boolean isDebug() {
         return debug;
     }
@@ -105,14 +162,154 @@ public class LaudspeakerConfig {
         this.logger = logger;
     }
 
+    public LaudspeakerLogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(LaudspeakerLogLevel logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public void setLogBufferSize(int logBufferSize) {
+        this.logBufferSize = Math.max(0, logBufferSize);
+    }
+
+    public double getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    public void setTraceSampleRate(double traceSampleRate) {
+        this.traceSampleRate = Math.max(0, Math.min(1, traceSampleRate));
+    }
+
+    public LaudspeakerEventTracer getTracer() {
+        return tracer;
+    }
+
     public int getMaxQueueSize() {
         return maxQueueSize;
     }
 
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
     public int getMaxBatchSize() {
         return maxBatchSize;
     }
 
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxQueueBytes() {
+        return maxQueueBytes;
+    }
+
+    public void setMaxQueueBytes(long maxQueueBytes) {
+        this.maxQueueBytes = maxQueueBytes;
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
+    }
+
+    public boolean getPrewarmConnection() {
+        return prewarmConnection;
+    }
+
+    public void setPrewarmConnection(boolean prewarmConnection) {
+        this.prewarmConnection = prewarmConnection;
+    }
+
+    public boolean getCoalesceUpdates() {
+        return coalesceUpdates;
+    }
+
+    public void setCoalesceUpdates(boolean coalesceUpdates) {
+        this.coalesceUpdates = coalesceUpdates;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public void setSegmentSizeBytes(int segmentSizeBytes) {
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    public LaudspeakerQueueStorageType getQueueStorageType() {
+        return queueStorageType;
+    }
+
+    public void setQueueStorageType(LaudspeakerQueueStorageType queueStorageType) {
+        this.queueStorageType = queueStorageType;
+    }
+
+    public int getRingCapacityBytes() {
+        return ringCapacityBytes;
+    }
+
+    public void setRingCapacityBytes(int ringCapacityBytes) {
+        this.ringCapacityBytes = ringCapacityBytes;
+    }
+
+    public LaudspeakerCompression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(LaudspeakerCompression compression) {
+        this.compression = compression;
+    }
+
+    public int getStagingCapacity() {
+        return stagingCapacity;
+    }
+
+    public void setStagingCapacity(int stagingCapacity) {
+        this.stagingCapacity = stagingCapacity;
+    }
+
+    public LaudspeakerOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(LaudspeakerOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public LaudspeakerDurability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(LaudspeakerDurability durability) {
+        this.durability = durability;
+    }
+
+    public int getGroupCommitWindowMillis() {
+        return groupCommitWindowMillis;
+    }
+
+    public void setGroupCommitWindowMillis(int groupCommitWindowMillis) {
+        this.groupCommitWindowMillis = groupCommitWindowMillis;
+    }
+
     public LaudspeakerNetworkStatus getNetworkStatus() {
         return networkStatus;
     }
@@ -121,6 +318,14 @@ public class LaudspeakerConfig {
         this.networkStatus = networkStatus;
     }
 
+    public LaudspeakerDrainScheduler getDrainScheduler() {
+        return drainScheduler;
+    }
+
+    public void setDrainScheduler(LaudspeakerDrainScheduler drainScheduler) {
+        this.drainScheduler = drainScheduler;
+    }
+
     public String getStoragePrefix() {
         return storagePrefix;
     }
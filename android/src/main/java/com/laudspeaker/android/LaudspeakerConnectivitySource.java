@@ -0,0 +1,21 @@
+package com.laudspeaker.android;
+
+/**
+ * Pushes changes of the default network to the network status. The Android implementation
+ * listens to a ConnectivityManager callback, tests on the JVM can call the listener directly.
+ */
+public interface LaudspeakerConnectivitySource {
+    /**
+     * Starts reporting changes, the listener may be called on any thread.
+     *
+     * @return the state of the network at the time of the call.
+     */
+    LaudspeakerNetworkState register(Listener listener);
+
+    void unregister();
+
+    @FunctionalInterface
+    interface Listener {
+        void onNetworkChanged(LaudspeakerNetworkState state);
+    }
+}
@@ -1,19 +1,19 @@
 package com.laudspeaker.android;
 
-import java.util.Calendar;
 import java.util.Date;
 
+/**
+ * Clock of the SDK. Wall clock time is kept as Unix milliseconds and only turned into a Date or
+ * ISO-8601 text when serialized, deadlines and durations use nanoTime.
+ */
 public class LaudspeakerDateProvider {
 
     public Date currentDate() {
-        Calendar cal = Calendar.getInstance();
-        return cal.getTime();
+        return new Date(currentTimeMillis());
     }
 
     public Date addSecondsToCurrentDate(int seconds) {
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.SECOND, seconds);
-        return cal.getTime();
+        return new Date(currentTimeMillis() + seconds * 1000L);
     }
 
     public long currentTimeMillis() {
@@ -23,4 +23,4 @@ public class LaudspeakerDateProvider {
     public long nanoTime() {
         return System.nanoTime();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.laudspeaker.android;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+
+import java.io.File;
+
+/**
+ * Schedules LaudspeakerDrainJobService through JobScheduler. The job gets what it needs to open
+ * the queue storage in its extras, so it runs without the rest of the SDK.
+ */
+public class LaudspeakerDrainJobScheduler implements LaudspeakerDrainScheduler {
+    public static final int JOB_ID = 0x4C534451; // "LSDQ"
+    static final String EXTRA_STORAGE_PREFIX = "storage_prefix";
+    static final String EXTRA_API_KEY = "api_key";
+    static final String EXTRA_STORAGE_TYPE = "storage_type";
+    static final String EXTRA_SEGMENT_SIZE = "segment_size";
+    static final String EXTRA_RING_CAPACITY = "ring_capacity";
+    static final String EXTRA_COMPRESSION = "compression";
+    static final String EXTRA_BATCH_SIZE = "batch_size";
+    static final String EXTRA_MAX_BATCH_BYTES = "max_batch_bytes";
+    static final String EXTRA_MAX_IN_FLIGHT = "max_in_flight";
+
+    private final Context context;
+    private final LaudspeakerAndroidConfig config;
+
+    public LaudspeakerDrainJobScheduler(Context context, LaudspeakerAndroidConfig config) {
+        this.context = context.getApplicationContext();
+        this.config = config;
+    }
+
+    @Override
+    public void schedule() {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null || config.getStoragePrefix() == null) {
+            return;
+        }
+
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_STORAGE_PREFIX, config.getStoragePrefix());
+        extras.putString(EXTRA_API_KEY, config.getApiKey());
+        extras.putString(EXTRA_STORAGE_TYPE, config.getQueueStorageType().name());
+        extras.putInt(EXTRA_SEGMENT_SIZE, config.getSegmentSizeBytes());
+        extras.putInt(EXTRA_RING_CAPACITY, config.getRingCapacityBytes());
+        extras.putString(EXTRA_COMPRESSION, config.getCompression().name());
+        extras.putInt(EXTRA_BATCH_SIZE, config.getDrainBatchSize());
+        extras.putLong(EXTRA_MAX_BATCH_BYTES, config.getMaxBatchBytes());
+        extras.putInt(EXTRA_MAX_IN_FLIGHT, config.getMaxInFlightBatches());
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, LaudspeakerDrainJobService.class))
+                .setRequiredNetworkType(config.getDrainRequiresUnmeteredNetwork() ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(config.getDrainRequiresCharging())
+                .setExtras(extras)
+                .build();
+        try {
+            if (jobScheduler.schedule(job) == JobScheduler.RESULT_SUCCESS) {
+                config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Scheduled the background drain job.");
+            }
+        } catch (RuntimeException e) {
+            // Thrown when the service is missing from the merged manifest
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to schedule the background drain job: {}", e);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(JOB_ID);
+        }
+    }
+
+    /**
+     * Rebuilds the parts of the configuration the queue needs from the job extras.
+     */
+    static LaudspeakerAndroidConfig configFrom(Context context, PersistableBundle extras) {
+        LaudspeakerAndroidConfig config = new LaudspeakerAndroidConfig(extras.getString(EXTRA_API_KEY, LaudspeakerConfig.defaultKey), null);
+        config.setStoragePrefix(extras.getString(EXTRA_STORAGE_PREFIX));
+        config.setQueueStorageType(LaudspeakerQueueStorageType.valueOf(extras.getString(EXTRA_STORAGE_TYPE, LaudspeakerQueueStorageType.SEGMENTED_LOG.name())));
+        config.setSegmentSizeBytes(extras.getInt(EXTRA_SEGMENT_SIZE, config.getSegmentSizeBytes()));
+        config.setRingCapacityBytes(extras.getInt(EXTRA_RING_CAPACITY, config.getRingCapacityBytes()));
+        config.setCompression(LaudspeakerCompression.valueOf(extras.getString(EXTRA_COMPRESSION, LaudspeakerCompression.NONE.name())));
+        int batchSize = extras.getInt(EXTRA_BATCH_SIZE, config.getDrainBatchSize());
+        config.setMaxBatchSize(batchSize);
+        config.setMaxBatchBytes(extras.getLong(EXTRA_MAX_BATCH_BYTES, config.getMaxBatchBytes()));
+        config.setMaxInFlightBatches(extras.getInt(EXTRA_MAX_IN_FLIGHT, config.getMaxInFlightBatches()));
+        // Large fixed batches, nothing is captured while the job runs
+        config.setFlushPolicy(new LaudspeakerAdaptiveFlushPolicy(batchSize, Long.MAX_VALUE, Long.MAX_VALUE, 2_000));
+        config.setCachePreferences(new LaudspeakerPreferences(context));
+        return config;
+    }
+
+    static File storageDirectory(LaudspeakerConfig config) {
+        return new File(config.getStoragePrefix(), config.getApiKey());
+    }
+}
@@ -0,0 +1,75 @@
+package com.laudspeaker.android;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Uploads the events a previous run of the app left in the queue storage, with its own queue and
+ * none of the SDK around it. If the SDK is running in this process its queue owns the storage,
+ * the job then finishes without uploading and asks to be retried later.
+ */
+public class LaudspeakerDrainJobService extends JobService {
+    private volatile LaudspeakerQueue queue = null;
+    private volatile ScheduledExecutorService executor = null;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        LaudspeakerAndroidConfig config = LaudspeakerDrainJobScheduler.configFrom(getApplicationContext(), params.getExtras());
+        File directory = LaudspeakerDrainJobScheduler.storageDirectory(config);
+        if (config.getStoragePrefix() == null) {
+            return false;
+        }
+        if (LaudspeakerQueue.isStorageOpen(directory)) {
+            // The queue keeps its drain request, so the job is rescheduled with backoff rather than
+            // dropped. jobFinished must not be called before onStartJob returns
+            new Handler(Looper.getMainLooper()).post(() -> jobFinished(params, true));
+            return true;
+        }
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new LaudspeakerThreadFactory("LaudspeakerDrainThread"));
+        LaudspeakerQueue queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor);
+        this.executor = executor;
+        this.queue = queue;
+        queue.start();
+        queue.drain((claimed, remainingEvents) -> {
+            if (!claimed) {
+                // The app's queue claimed the storage first
+                config.getLogger().log(LaudspeakerLogLevel.INFO, "Queue storage is in use, the drain job is retried later.");
+                shutdown(queue, executor);
+                jobFinished(params, true);
+                return;
+            }
+            config.getLogger().log(LaudspeakerLogLevel.INFO, "Drain job finished with {} events left.", remainingEvents);
+            shutdown(queue, executor);
+            jobFinished(params, remainingEvents > 0);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Constraints no longer hold, what is left is tried again later
+        LaudspeakerQueue queue = this.queue;
+        ScheduledExecutorService executor = this.executor;
+        if (queue != null && executor != null) {
+            shutdown(queue, executor);
+        }
+        return true;
+    }
+
+    private void shutdown(LaudspeakerQueue queue, ScheduledExecutorService executor) {
+        if (this.queue == queue) {
+            this.queue = null;
+            this.executor = null;
+        }
+        queue.stop();
+        // Lets the stop task run, nothing else is submitted
+        executor.shutdown();
+    }
+}
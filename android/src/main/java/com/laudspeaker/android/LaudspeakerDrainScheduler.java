@@ -0,0 +1,14 @@
+package com.laudspeaker.android;
+
+/**
+ * Hands queued events over to a background job that uploads them after the app is gone.
+ * Called on the queue executor.
+ */
+public interface LaudspeakerDrainScheduler {
+    /**
+     * Makes sure a drain job will run, replacing the one scheduled before if any.
+     */
+    void schedule();
+
+    void cancel();
+}
@@ -0,0 +1,17 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerDurability {
+    /*
+    Records are handed to the page cache in groups and never synced, a power loss can drop the
+    latest events. Only written groups survive an app crash, whatever the mode.
+     */
+    NONE,
+    /*
+    Records are written in groups and each group commit ends with one fsync, of the read cursor too.
+     */
+    BATCH,
+    /*
+    Every record is written and synced on its own before append returns.
+     */
+    EVERY_EVENT,
+}
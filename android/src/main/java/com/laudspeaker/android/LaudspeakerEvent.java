@@ -2,9 +2,12 @@ package com.laudspeaker.android;
 
 import java.util.Date;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 public class LaudspeakerEvent {
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
     /*
     Event name as a string.
      */
@@ -19,11 +22,15 @@ public class LaudspeakerEvent {
      */
     private final Map<String, Object> payload;
     /*
-    Evvent timestamp.
+    Event properties captured as LaudspeakerProperties, null when they came as a map.
+     */
+    private final LaudspeakerProperties properties;
+    /*
+    Event timestamp in Unix milliseconds, NO_TIMESTAMP if unknown.
      */
-    private final Date timestamp;
+    private final long timestamp;
     /*
-    Event ID
+    Event ID, time-ordered so sorting by ID gives capture order
      */
     private final UUID uuid;
     private String source;
@@ -34,8 +41,30 @@ public class LaudspeakerEvent {
         this.event = event;
         this.correlationValue = id;
         this.payload = payload;
-        this.timestamp = new Date();
-        this.uuid = UUID.randomUUID();
+        this.properties = null;
+        this.timestamp = System.currentTimeMillis();
+        this.uuid = LaudspeakerUuidV7.next(timestamp);
+    }
+
+    public LaudspeakerEvent(String event, String id, LaudspeakerProperties properties) {
+        this.event = event;
+        this.correlationValue = id;
+        this.payload = null;
+        this.properties = properties;
+        if (properties != null) {
+            properties.seal();
+        }
+        this.timestamp = System.currentTimeMillis();
+        this.uuid = LaudspeakerUuidV7.next(timestamp);
+    }
+
+    LaudspeakerEvent(String event, String id, Map<String, Object> payload, long timestamp, UUID uuid) {
+        this.event = event;
+        this.correlationValue = id;
+        this.payload = payload;
+        this.properties = null;
+        this.timestamp = timestamp;
+        this.uuid = uuid;
     }
 
     // Getters (and setters if needed)
@@ -47,14 +76,36 @@ public class LaudspeakerEvent {
         return correlationValue;
     }
 
+    /**
+     * Boxes the values into a new map on every call when the event was built from LaudspeakerProperties.
+     */
     public Map<String, Object> getPayload() {
-        return payload;
+        return properties != null ? properties.toMap() : payload;
     }
 
-    public Date getTimestamp() {
+    LaudspeakerProperties getProperties() {
+        return properties;
+    }
+
+    boolean hasPayload() {
+        return payload != null || properties != null;
+    }
+
+    public long getTimestampMillis() {
         return timestamp;
     }
 
+    public boolean hasTimestamp() {
+        return timestamp != NO_TIMESTAMP;
+    }
+
+    /**
+     * Allocates a Date on every call, getTimestampMillis does not.
+     */
+    public Date getTimestamp() {
+        return hasTimestamp() ? new Date(timestamp) : null;
+    }
+
     public UUID getEventId() {
         return uuid;
     }
@@ -62,6 +113,11 @@ public class LaudspeakerEvent {
     public void setFCMToken(String token) {
         this.$fcm = new FCMToken(token);
     }
+
+    FCMToken getFCMToken() {
+        return $fcm;
+    }
+
     public void setSource(String source) {
         this.source = source;
     }
@@ -70,11 +126,25 @@ public class LaudspeakerEvent {
         return source;
     }
 
-    public class FCMToken {
+    /*
+    Source reported for an event: message interactions come from a campaign, everything else from the app.
+     */
+    static String sourceOf(String event) {
+        if (Objects.equals(event, "$delivered") || Objects.equals(event, "$opened")) {
+            return "message";
+        }
+        return "mobile";
+    }
+
+    public static class FCMToken {
         private final String androidDeviceToken;
 
         private FCMToken(String token) {
             this.androidDeviceToken = token;
         }
+
+        public String getAndroidDeviceToken() {
+            return androidDeviceToken;
+        }
     }
 }
\ No newline at end of file
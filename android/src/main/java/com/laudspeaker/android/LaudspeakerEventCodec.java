@@ -0,0 +1,500 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of queued events.
+ * A record is [byte version][string event][string customer id][byte flags][varint timestamp]
+ * [16 byte uuid][value payload]. Event names, customer ids and property keys are stored as ids
+ * into the dictionary of the segment the record lives in, numbers are varints or raw doubles.
+ * JSON records written by earlier versions start with '{' and are told apart by isBinary.
+ */
+public class LaudspeakerEventCodec {
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_PAYLOAD = 1;
+    private static final int FLAG_TIMESTAMP = 2;
+    private static final int FLAG_UUID = 4;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_MAP = 6;
+    private static final int TYPE_LIST = 7;
+    // Number kept as its decimal text, e.g. Float or BigDecimal
+    private static final int TYPE_NUMBER_TEXT = 8;
+    // Any other value, serialized with Gson
+    private static final int TYPE_JSON = 9;
+
+    // Longer strings are written inline rather than filling the dictionary
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 64;
+
+    private static final ThreadLocal<Output> outputs = ThreadLocal.withInitial(Output::new);
+
+    private final Gson serializer;
+
+    public LaudspeakerEventCodec(Gson serializer) {
+        this.serializer = serializer;
+    }
+
+    public static boolean isBinary(byte[] record) {
+        return record.length > 0 && record[0] == VERSION;
+    }
+
+    public byte[] encode(LaudspeakerEvent event, LaudspeakerStringDictionary dictionary) throws IOException {
+        Output output = outputs.get();
+        output.reset();
+        output.writeByte(VERSION);
+        writeKey(output, event.getEvent(), dictionary);
+        writeKey(output, event.getId(), dictionary);
+
+        int flags = 0;
+        if (event.hasPayload()) flags |= FLAG_PAYLOAD;
+        if (event.hasTimestamp()) flags |= FLAG_TIMESTAMP;
+        if (event.getEventId() != null) flags |= FLAG_UUID;
+        output.writeByte(flags);
+
+        if (event.hasTimestamp()) {
+            output.writeVarint(zigzag(event.getTimestampMillis()));
+        }
+        if (event.getEventId() != null) {
+            output.writeLong(event.getEventId().getMostSignificantBits());
+            output.writeLong(event.getEventId().getLeastSignificantBits());
+        }
+        if (event.getProperties() != null) {
+            writeProperties(output, event.getProperties(), dictionary);
+        } else if (event.getPayload() != null) {
+            writeValue(output, event.getPayload(), dictionary);
+        }
+        return output.toByteArray();
+    }
+
+    public LaudspeakerEvent decode(byte[] record, LaudspeakerStringDictionary dictionary) throws IOException {
+        Input input = new Input(record);
+        checkVersion(input);
+        String event = readKey(input, dictionary);
+        String id = readKey(input, dictionary);
+        int flags = input.readByte();
+        long timestamp = (flags & FLAG_TIMESTAMP) != 0 ? unzigzag(input.readVarint()) : LaudspeakerEvent.NO_TIMESTAMP;
+        UUID uuid = (flags & FLAG_UUID) != 0 ? new UUID(input.readLong(), input.readLong()) : null;
+
+        Map<String, Object> payload = null;
+        if ((flags & FLAG_PAYLOAD) != 0) {
+            Object value = readValue(input, dictionary);
+            if (value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) value;
+                payload = map;
+            }
+        }
+        return new LaudspeakerEvent(event, id, payload, timestamp, uuid);
+    }
+
+    /**
+     * Reads the event ID of a binary record without resolving its strings, null if it has none.
+     */
+    public static UUID readEventId(byte[] record) throws IOException {
+        Input input = new Input(record);
+        checkVersion(input);
+        skipKey(input);
+        skipKey(input);
+        int flags = input.readByte();
+        if ((flags & FLAG_UUID) == 0) {
+            return null;
+        }
+        if ((flags & FLAG_TIMESTAMP) != 0) {
+            input.readVarint();
+        }
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    /**
+     * Converts a binary record straight to the JSON wire format of LaudspeakerEventTypeAdapter,
+     * adding the source and the $fcm token that are only known at send time.
+     */
+    public void writeJson(byte[] record, LaudspeakerStringDictionary dictionary, JsonWriter out, String fcmToken) throws IOException {
+        Input input = new Input(record);
+        checkVersion(input);
+        String event = readKey(input, dictionary);
+        String id = readKey(input, dictionary);
+        int flags = input.readByte();
+        long timestamp = (flags & FLAG_TIMESTAMP) != 0 ? unzigzag(input.readVarint()) : 0;
+        long uuidMsb = 0;
+        long uuidLsb = 0;
+        if ((flags & FLAG_UUID) != 0) {
+            uuidMsb = input.readLong();
+            uuidLsb = input.readLong();
+        }
+
+        out.beginObject();
+        out.name("event").value(event);
+        out.name("correlationKey").value("_id");
+        out.name("correlationValue").value(id);
+        if ((flags & FLAG_PAYLOAD) != 0) {
+            out.name("payload");
+            copyValue(input, dictionary, out);
+        }
+        if ((flags & FLAG_TIMESTAMP) != 0) {
+            out.name("timestamp").value(LaudspeakerJsonFormat.formatIsoDate(timestamp));
+        }
+        if ((flags & FLAG_UUID) != 0) {
+            out.name("uuid").value(LaudspeakerJsonFormat.formatUuid(new UUID(uuidMsb, uuidLsb)));
+        }
+        out.name("source").value(LaudspeakerEvent.sourceOf(event));
+        out.name("$fcm").beginObject();
+        if (fcmToken != null) {
+            out.name("androidDeviceToken").value(fcmToken);
+        }
+        out.endObject();
+        out.endObject();
+    }
+
+    private void writeValue(Output output, Object value, LaudspeakerStringDictionary dictionary) throws IOException {
+        if (value == null) {
+            output.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            output.writeByte(TYPE_STRING);
+            output.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(TYPE_LONG);
+            output.writeVarint(zigzag(((Number) value).longValue()));
+        } else if (value instanceof Double) {
+            double number = (Double) value;
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException(number + " is not a valid double value as per JSON specification.");
+            }
+            output.writeByte(TYPE_DOUBLE);
+            output.writeLong(Double.doubleToRawLongBits(number));
+        } else if (value instanceof Number) {
+            if (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite())) {
+                throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification.");
+            }
+            output.writeByte(TYPE_NUMBER_TEXT);
+            output.writeString(value.toString());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeByte(TYPE_MAP);
+            output.writeVarint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeKey(output, String.valueOf(entry.getKey()), dictionary);
+                writeValue(output, entry.getValue(), dictionary);
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            output.writeByte(TYPE_LIST);
+            output.writeVarint(collection.size());
+            for (Object item : collection) {
+                writeValue(output, item, dictionary);
+            }
+        } else {
+            output.writeByte(TYPE_JSON);
+            output.writeString(serializer.toJson(value));
+        }
+    }
+
+    // Same bytes as writeValue of the equivalent map, so records decode the same way
+    private void writeProperties(Output output, LaudspeakerProperties properties, LaudspeakerStringDictionary dictionary) throws IOException {
+        output.writeByte(TYPE_MAP);
+        output.writeVarint(properties.size());
+        for (int i = 0; i < properties.size(); i++) {
+            writeKey(output, properties.key(i), dictionary);
+            switch (properties.type(i)) {
+                case LaudspeakerProperties.TYPE_LONG:
+                    output.writeByte(TYPE_LONG);
+                    output.writeVarint(zigzag(properties.longValue(i)));
+                    break;
+                case LaudspeakerProperties.TYPE_DOUBLE:
+                    output.writeByte(TYPE_DOUBLE);
+                    output.writeLong(Double.doubleToRawLongBits(properties.doubleValue(i)));
+                    break;
+                case LaudspeakerProperties.TYPE_BOOLEAN:
+                    output.writeByte(properties.booleanValue(i) ? TYPE_TRUE : TYPE_FALSE);
+                    break;
+                default:
+                    String value = properties.stringValue(i);
+                    if (value == null) {
+                        output.writeByte(TYPE_NULL);
+                    } else {
+                        output.writeByte(TYPE_STRING);
+                        output.writeString(value);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private Object readValue(Input input, LaudspeakerStringDictionary dictionary) throws IOException {
+        int type = input.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return false;
+            case TYPE_TRUE:
+                return true;
+            case TYPE_LONG:
+                return unzigzag(input.readVarint());
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(input.readLong());
+            case TYPE_STRING:
+                return input.readString();
+            case TYPE_NUMBER_TEXT:
+                return Double.valueOf(input.readString());
+            case TYPE_MAP: {
+                int size = (int) input.readVarint();
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    String key = readKey(input, dictionary);
+                    map.put(key, readValue(input, dictionary));
+                }
+                return map;
+            }
+            case TYPE_LIST: {
+                int size = (int) input.readVarint();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(input, dictionary));
+                }
+                return list;
+            }
+            case TYPE_JSON:
+                return serializer.fromJson(input.readString(), Object.class);
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private void copyValue(Input input, LaudspeakerStringDictionary dictionary, JsonWriter out) throws IOException {
+        int type = input.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                out.nullValue();
+                break;
+            case TYPE_FALSE:
+                out.value(false);
+                break;
+            case TYPE_TRUE:
+                out.value(true);
+                break;
+            case TYPE_LONG:
+                out.value(unzigzag(input.readVarint()));
+                break;
+            case TYPE_DOUBLE:
+                out.value(Double.longBitsToDouble(input.readLong()));
+                break;
+            case TYPE_STRING:
+                out.value(input.readString());
+                break;
+            case TYPE_NUMBER_TEXT:
+            case TYPE_JSON:
+                out.jsonValue(input.readString());
+                break;
+            case TYPE_MAP: {
+                int size = (int) input.readVarint();
+                out.beginObject();
+                for (int i = 0; i < size; i++) {
+                    out.name(readKey(input, dictionary));
+                    copyValue(input, dictionary, out);
+                }
+                out.endObject();
+                break;
+            }
+            case TYPE_LIST: {
+                int size = (int) input.readVarint();
+                out.beginArray();
+                for (int i = 0; i < size; i++) {
+                    copyValue(input, dictionary, out);
+                }
+                out.endArray();
+                break;
+            }
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /*
+    Strings that repeat across events: 0 is null, odd values are dictionary ids and even values
+    are the length + 1 of an inline UTF-8 string.
+     */
+    private static void writeKey(Output output, String value, LaudspeakerStringDictionary dictionary) throws IOException {
+        if (value == null) {
+            output.writeVarint(0);
+            return;
+        }
+        if (dictionary != null && value.length() <= MAX_DICTIONARY_STRING_LENGTH) {
+            int id = dictionary.intern(value);
+            if (id >= 0) {
+                output.writeVarint(((long) id << 1) | 1);
+                return;
+            }
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeVarint((long) (bytes.length + 1) << 1);
+        output.writeBytes(bytes);
+    }
+
+    private static String readKey(Input input, LaudspeakerStringDictionary dictionary) throws IOException {
+        long header = input.readVarint();
+        if (header == 0) {
+            return null;
+        }
+        if ((header & 1) == 1) {
+            if (dictionary == null) {
+                throw new IOException("Record references a dictionary that is not available");
+            }
+            return dictionary.get((int) (header >>> 1));
+        }
+        return input.readUtf8((int) (header >>> 1) - 1);
+    }
+
+    private static void skipKey(Input input) throws IOException {
+        long header = input.readVarint();
+        if (header != 0 && (header & 1) == 0) {
+            input.skip((int) (header >>> 1) - 1);
+        }
+    }
+
+    private static void checkVersion(Input input) throws IOException {
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported record version " + version);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Output {
+        private byte[] buffer = new byte[256];
+        private int position = 0;
+
+        void reset() {
+            position = 0;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[position];
+            System.arraycopy(buffer, 0, result, 0, position);
+            return result;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (position + needed > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + needed)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buffer;
+        private int position = 0;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (buffer[position++] & 0xFF);
+            }
+            return result;
+        }
+
+        String readString() throws IOException {
+            return readUtf8((int) readVarint());
+        }
+
+        String readUtf8(int length) throws IOException {
+            require(length);
+            String result = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return result;
+        }
+
+        void skip(int length) throws IOException {
+            require(length);
+            position += length;
+        }
+
+        private void require(int length) throws IOException {
+            if (length < 0 || position + length > buffer.length) {
+                throw new IOException("Truncated record");
+            }
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.laudspeaker.android;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+
+/**
+ * Segmented append-only log of queued events.
+ * Records are stored as [int length][bytes] in fixed-size segment files, the order is kept in a
+ * compact in-memory index of packed (segment, offset) positions and the read cursor is persisted
+ * so acknowledged records are never read again. Fully consumed segments are deleted.
+ * Every segment has a string dictionary sidecar that its binary records refer to.
+ * Appended records are collected in memory and written to the segment as one group on commit,
+ * or on their own and synced right away with EVERY_EVENT durability.
+ * Written bytes are never overwritten: a record that replaces one already written is appended with
+ * the SUPERSEDES bit set in its length, and the record before it is skipped when the log is scanned.
+ */
+public class LaudspeakerEventLog implements LaudspeakerQueueStorage {
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String DICTIONARY_SUFFIX = ".dict";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int HEADER_SIZE = 4;
+    // Set in the length of a record that replaces the record before it
+    private static final int SUPERSEDES = 0x40000000;
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final LaudspeakerDurability durability;
+    private final LaudspeakerLogger logger;
+
+    // Circular index of packed record positions, see position(), and the record sizes next to it.
+    // starts holds the segment offset of the record a replaced record was first written as, its own otherwise
+    private long[] index = new long[64];
+    private int[] sizes = new int[64];
+    private int[] starts = new int[64];
+    private long bytes = 0;
+    private int head = 0;
+    private int count = 0;
+
+    private boolean opened = false;
+    // Set by close, only an explicit open brings the storage back
+    private boolean closed = false;
+    private int oldestSegment = 0;
+    private int writeSegment = 0;
+    private RandomAccessFile writer = null;
+    private int writeOffset = 0;
+    // Records appended since the last commit, not yet written to the segment
+    private byte[] writeBuffer = new byte[4096];
+    private int pendingBytes = 0;
+    private boolean unsynced = false;
+    private int readSegment = -1;
+    private RandomAccessFile reader = null;
+    private RandomAccessFile cursor = null;
+    private boolean cursorUnsynced = false;
+    private final Map<Integer, LaudspeakerStringDictionary> dictionaries = new HashMap<>();
+
+    public LaudspeakerEventLog(File directory, int segmentSizeBytes, LaudspeakerDurability durability, LaudspeakerLogger logger) {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.durability = durability;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the log and rebuilds the index from the segments on disk, other methods open it lazily
+     * until it is closed.
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        closed = false;
+        ensureOpen();
+    }
+
+    @Override
+    public synchronized boolean append(RecordEncoder encoder) throws IOException {
+        ensureOpen();
+
+        byte[] record = encoder.encode(dictionaryOf(writeSegment));
+        int recordSize = HEADER_SIZE + record.length;
+        int tail = writeOffset + pendingBytes;
+        if (tail > 0 && tail + recordSize > segmentSizeBytes) {
+            openWriter(writeSegment + 1);
+            record = encoder.encode(dictionaryOf(writeSegment));
+            recordSize = HEADER_SIZE + record.length;
+        }
+
+        addToIndex(position(writeSegment, writeOffset + pendingBytes), recordSize);
+        addPending(record, 0);
+        if (durability == LaudspeakerDurability.EVERY_EVENT) {
+            commit();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the tail record in the write segment. A tail that is still pending is replaced in the
+     * buffer, one already written stays as it is and the new record is appended after it as
+     * superseding it. A crash while that record is written leaves the old one in place.
+     */
+    @Override
+    public synchronized boolean replaceLast(RecordEncoder encoder) throws IOException {
+        ensureOpen();
+        if (count == 0) {
+            return false;
+        }
+        int slot = (head + count - 1) % index.length;
+        int segment = segmentOf(index[slot]);
+        int offset = offsetOf(index[slot]);
+        if (segment != writeSegment) {
+            return false;
+        }
+        byte[] record = encoder.encode(dictionaryOf(segment));
+        int recordSize = HEADER_SIZE + record.length;
+
+        int flags;
+        if (offset < writeOffset) {
+            // Nothing is pending behind the tail, so the buffer is empty and the record goes after it
+            if (writeOffset + recordSize > segmentSizeBytes) {
+                return false;
+            }
+            flags = SUPERSEDES;
+            index[slot] = position(segment, writeOffset);
+        } else {
+            if (offset > 0 && offset + recordSize > segmentSizeBytes) {
+                return false;
+            }
+            // A pending record keeps superseding what it superseded
+            pendingBytes = offset - writeOffset;
+            flags = (writeBuffer[pendingBytes] << 24) & SUPERSEDES;
+        }
+        addPending(record, flags);
+        bytes += recordSize - sizes[slot];
+        sizes[slot] = recordSize;
+        if (durability == LaudspeakerDurability.EVERY_EVENT) {
+            commit();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+        if (!opened) {
+            return;
+        }
+        writePending();
+        if (unsynced && durability != LaudspeakerDurability.NONE) {
+            sync();
+        }
+        if (cursorUnsynced && durability != LaudspeakerDurability.NONE) {
+            // Otherwise a power loss brings back records that were already consumed
+            cursor.getFD().sync();
+            cursorUnsynced = false;
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized long byteSize() {
+        return bytes;
+    }
+
+    /**
+     * Reads records from the head of the log without consuming them, up to maxRecords records
+     * or maxBytes stored bytes.
+     */
+    @Override
+    public synchronized List<LaudspeakerQueueRecord> peek(int offset, int maxRecords, long maxBytes) throws IOException {
+        ensureOpen();
+        writePending();
+
+        int n = Math.min(maxRecords, count - offset);
+        List<LaudspeakerQueueRecord> records = new ArrayList<>(Math.max(0, Math.min(n, 256)));
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            int slot = (head + offset + i) % index.length;
+            total += sizes[slot];
+            if (i > 0 && total > maxBytes) {
+                break;
+            }
+            long position = index[slot];
+            records.add(new LaudspeakerQueueRecord(read(position), dictionaryOf(segmentOf(position))));
+        }
+        return records;
+    }
+
+    /**
+     * Consumes the first n records, persists the read cursor and deletes fully consumed segments.
+     */
+    @Override
+    public synchronized void remove(int n) throws IOException {
+        ensureOpen();
+
+        n = Math.min(n, count);
+        if (n <= 0) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            bytes -= sizes[(head + i) % index.length];
+        }
+        head = (head + n) % index.length;
+        count -= n;
+
+        if (count == 0) {
+            // Nothing left to read, start over with an empty segment
+            pendingBytes = 0;
+            int next = writeSegment + 1;
+            openWriter(next);
+            writeCursor(next, 0);
+            deleteSegmentsBefore(next);
+            return;
+        }
+
+        long first = index[head];
+        // What the head replaced is behind the cursor now, a cut must not reach back to it
+        starts[head] = offsetOf(first);
+        writeCursor(segmentOf(first), offsetOf(first));
+        deleteSegmentsBefore(segmentOf(first));
+    }
+
+    /**
+     * Cuts the log back to where the first of the n newest records starts, deleting the segments
+     * after it. A replaced record is cut together with the records it replaced.
+     */
+    @Override
+    public synchronized void removeLast(int n) throws IOException {
+        ensureOpen();
+
+        n = Math.min(n, count);
+        if (n <= 0) {
+            return;
+        }
+        int slot = (head + count - n) % index.length;
+        int segment = segmentOf(index[slot]);
+        int offset = starts[slot];
+        for (int i = 0; i < n; i++) {
+            removeLastFromIndex();
+        }
+        if (segment == writeSegment && offset >= writeOffset) {
+            // Nothing written yet, whatever a failed write left after the written records goes too
+            pendingBytes = offset - writeOffset;
+            writer.setLength(writeOffset);
+            writer.seek(writeOffset);
+            return;
+        }
+
+        pendingBytes = 0;
+        if (segment != writeSegment) {
+            closeQuietly(writer);
+            writer = null;
+            for (int later = writeSegment; later > segment; later--) {
+                if (later == readSegment) {
+                    closeQuietly(reader);
+                    reader = null;
+                    readSegment = -1;
+                }
+                segmentFile(later).delete();
+                LaudspeakerStringDictionary dictionary = dictionaries.remove(later);
+                if (dictionary != null) {
+                    dictionary.delete();
+                } else {
+                    dictionaryFile(later).delete();
+                }
+            }
+            openWriter(segment);
+        }
+        writer.setLength(offset);
+        writer.seek(offset);
+        writeOffset = offset;
+        unsynced = true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            ensureOpen();
+            head = 0;
+            count = 0;
+            bytes = 0;
+            pendingBytes = 0;
+            int next = writeSegment + 1;
+            openWriter(next);
+            writeCursor(next, 0);
+            deleteSegmentsBefore(next);
+        } catch (IOException e) {
+            logger.log(LaudspeakerLogLevel.WARN, "Failed to clear the event log: {}", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            commit();
+        } catch (IOException e) {
+            logger.log(LaudspeakerLogLevel.WARN, "Failed to write queued records: {}", e);
+        }
+        closeQuietly(writer);
+        closeQuietly(reader);
+        closeQuietly(cursor);
+        writer = null;
+        reader = null;
+        cursor = null;
+        cursorUnsynced = false;
+        readSegment = -1;
+        opened = false;
+        closed = true;
+        pendingBytes = 0;
+        unsynced = false;
+        head = 0;
+        count = 0;
+        bytes = 0;
+        for (LaudspeakerStringDictionary dictionary : dictionaries.values()) {
+            dictionary.close();
+        }
+        dictionaries.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (opened) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("Event log is closed.");
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        int cursorSegment = 0;
+        int cursorOffset = 0;
+        File cursorFile = new File(directory, CURSOR_FILE);
+        if (cursorFile.length() >= 8) {
+            try (RandomAccessFile file = new RandomAccessFile(cursorFile, "r")) {
+                cursorSegment = file.readInt();
+                cursorOffset = file.readInt();
+            }
+        }
+
+        int[] segments = listSegments();
+        byte[] scratch = new byte[0];
+        int lastSegment = cursorSegment;
+        oldestSegment = cursorSegment;
+        for (int segment : segments) {
+            if (segment < cursorSegment) {
+                segmentFile(segment).delete();
+                dictionaryFile(segment).delete();
+                continue;
+            }
+            scratch = scanSegment(segment, segment == cursorSegment ? cursorOffset : 0, scratch);
+            lastSegment = segment;
+        }
+        if (segments.length > 0 && segments[0] > cursorSegment) {
+            oldestSegment = segments[0];
+        }
+
+        opened = true;
+        openWriter(lastSegment);
+        logger.log(LaudspeakerLogLevel.DEBUG, "Event log opened with {} queued records.", count);
+    }
+
+    /**
+     * Indexes the records of a segment from one sequential read, walking the headers in memory.
+     *
+     * @return the scratch buffer, grown if the segment did not fit.
+     */
+    private byte[] scanSegment(int segment, int fromOffset, byte[] scratch) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw")) {
+            int length = (int) Math.max(0, file.length() - fromOffset);
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            file.seek(fromOffset);
+            file.readFully(scratch, 0, length);
+
+            int offset = 0;
+            while (offset + HEADER_SIZE <= length) {
+                int header = ((scratch[offset] & 0xff) << 24) | ((scratch[offset + 1] & 0xff) << 16) | ((scratch[offset + 2] & 0xff) << 8) | (scratch[offset + 3] & 0xff);
+                int recordLength = header & ~SUPERSEDES;
+                if (header < 0 || (long) offset + HEADER_SIZE + recordLength > length) {
+                    break;
+                }
+                int start = fromOffset + offset;
+                if ((header & SUPERSEDES) != 0 && count > 0) {
+                    // The record before is replaced by this one. None before the cursor means it was removed already
+                    start = starts[(head + count - 1) % index.length];
+                    removeLastFromIndex();
+                }
+                addToIndex(position(segment, fromOffset + offset), HEADER_SIZE + recordLength);
+                starts[(head + count - 1) % index.length] = start;
+                offset += HEADER_SIZE + recordLength;
+            }
+            if (offset < length) {
+                // Drop a partially written record left behind by a crash
+                logger.log(LaudspeakerLogLevel.WARN, "Truncating torn record in segment {} at {}.", segment, fromOffset + offset);
+                file.setLength(fromOffset + offset);
+            }
+        }
+        return scratch;
+    }
+
+    private int[] listSegments() {
+        String[] names = directory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] segments = new int[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    int segment = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments[n++] = segment;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        segments = Arrays.copyOf(segments, n);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private void openWriter(int segment) throws IOException {
+        if (writer != null) {
+            // The group started in the old segment has to reach it before the writer moves on
+            writePending();
+            if (unsynced && durability != LaudspeakerDurability.NONE) {
+                sync();
+            }
+        }
+        closeQuietly(writer);
+        writer = new RandomAccessFile(segmentFile(segment), "rw");
+        writeSegment = segment;
+        writeOffset = (int) writer.length();
+        writer.seek(writeOffset);
+    }
+
+    private void addPending(byte[] record, int flags) {
+        int recordSize = HEADER_SIZE + record.length;
+        if (writeBuffer.length < pendingBytes + recordSize) {
+            writeBuffer = Arrays.copyOf(writeBuffer, Math.max(pendingBytes + recordSize, writeBuffer.length * 2));
+        }
+        int header = record.length | flags;
+        writeBuffer[pendingBytes] = (byte) (header >>> 24);
+        writeBuffer[pendingBytes + 1] = (byte) (header >>> 16);
+        writeBuffer[pendingBytes + 2] = (byte) (header >>> 8);
+        writeBuffer[pendingBytes + 3] = (byte) header;
+        System.arraycopy(record, 0, writeBuffer, pendingBytes + HEADER_SIZE, record.length);
+        pendingBytes += recordSize;
+    }
+
+    private void writePending() throws IOException {
+        if (pendingBytes == 0) {
+            return;
+        }
+        writer.write(writeBuffer, 0, pendingBytes);
+        writeOffset += pendingBytes;
+        pendingBytes = 0;
+        unsynced = true;
+    }
+
+    private void sync() throws IOException {
+        // Dictionary entries first, records in the segment refer to them
+        LaudspeakerStringDictionary dictionary = dictionaries.get(writeSegment);
+        if (dictionary != null) {
+            dictionary.sync();
+        }
+        writer.getFD().sync();
+        unsynced = false;
+    }
+
+    private byte[] read(long position) throws IOException {
+        int segment = segmentOf(position);
+        if (segment != readSegment || reader == null) {
+            closeQuietly(reader);
+            reader = new RandomAccessFile(segmentFile(segment), "r");
+            readSegment = segment;
+        }
+        reader.seek(offsetOf(position));
+        int header = reader.readInt();
+        int length = header & ~SUPERSEDES;
+        if (header < 0) {
+            throw new EOFException("Corrupted record in segment " + segment);
+        }
+        byte[] record = new byte[length];
+        reader.readFully(record);
+        return record;
+    }
+
+    /**
+     * Overwrites the cursor in place, the next commit syncs it.
+     */
+    private void writeCursor(int segment, int offset) throws IOException {
+        if (cursor == null) {
+            cursor = new RandomAccessFile(new File(directory, CURSOR_FILE), "rw");
+        }
+        byte[] bytes = new byte[8];
+        bytes[0] = (byte) (segment >>> 24);
+        bytes[1] = (byte) (segment >>> 16);
+        bytes[2] = (byte) (segment >>> 8);
+        bytes[3] = (byte) segment;
+        bytes[4] = (byte) (offset >>> 24);
+        bytes[5] = (byte) (offset >>> 16);
+        bytes[6] = (byte) (offset >>> 8);
+        bytes[7] = (byte) offset;
+        cursor.seek(0);
+        cursor.write(bytes);
+        cursorUnsynced = true;
+    }
+
+    private void deleteSegmentsBefore(int segment) {
+        for (int existing = oldestSegment; existing < segment; existing++) {
+            if (existing == readSegment) {
+                closeQuietly(reader);
+                reader = null;
+                readSegment = -1;
+            }
+            File file = segmentFile(existing);
+            if (file.exists() && !file.delete()) {
+                logger.log(LaudspeakerLogLevel.WARN, "Failed to delete segment {}.", existing);
+            }
+            LaudspeakerStringDictionary dictionary = dictionaries.remove(existing);
+            if (dictionary != null) {
+                dictionary.delete();
+            } else {
+                dictionaryFile(existing).delete();
+            }
+        }
+        oldestSegment = Math.max(oldestSegment, segment);
+    }
+
+    private void addToIndex(long position, int size) {
+        if (count == index.length) {
+            long[] grown = new long[index.length * 2];
+            int[] grownSizes = new int[index.length * 2];
+            int[] grownStarts = new int[index.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = index[(head + i) % index.length];
+                grownSizes[i] = sizes[(head + i) % index.length];
+                grownStarts[i] = starts[(head + i) % index.length];
+            }
+            index = grown;
+            sizes = grownSizes;
+            starts = grownStarts;
+            head = 0;
+        }
+        index[(head + count) % index.length] = position;
+        sizes[(head + count) % index.length] = size;
+        starts[(head + count) % index.length] = offsetOf(position);
+        bytes += size;
+        count++;
+    }
+
+    private void removeLastFromIndex() {
+        count--;
+        bytes -= sizes[(head + count) % index.length];
+    }
+
+    private LaudspeakerStringDictionary dictionaryOf(int segment) {
+        LaudspeakerStringDictionary dictionary = dictionaries.get(segment);
+        if (dictionary == null) {
+            dictionary = new LaudspeakerStringDictionary(dictionaryFile(segment));
+            dictionaries.put(segment, dictionary);
+        }
+        return dictionary;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, String.format(Locale.US, "%010d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private File dictionaryFile(int segment) {
+        return new File(directory, String.format(Locale.US, "%010d", segment) + DICTIONARY_SUFFIX);
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xffffffffL);
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.laudspeaker.android;
+
+import java.util.Locale;
+
+/**
+ * Timestamps of one sampled event through the pipeline, from System.nanoTime. A stage the event
+ * did not reach is 0.
+ */
+public class LaudspeakerEventTrace {
+    private final String eventId;
+    private final String event;
+    private final long capturedAtMillis;
+    private final long capturedNanos;
+    long persistedNanos = 0;
+    long sentNanos = 0;
+    long ackedNanos = 0;
+    int attempts = 0;
+    boolean dropped = false;
+
+    LaudspeakerEventTrace(String eventId, String event, long capturedAtMillis, long capturedNanos) {
+        this.eventId = eventId;
+        this.event = event;
+        this.capturedAtMillis = capturedAtMillis;
+        this.capturedNanos = capturedNanos;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public long getCapturedAtMillis() {
+        return capturedAtMillis;
+    }
+
+    public long getCapturedNanos() {
+        return capturedNanos;
+    }
+
+    public long getPersistedNanos() {
+        return persistedNanos;
+    }
+
+    /**
+     * @return when the first upload of the event started
+     */
+    public long getSentNanos() {
+        return sentNanos;
+    }
+
+    public long getAckedNanos() {
+        return ackedNanos;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return true if the event left the queue without being acknowledged, because it was evicted,
+     * rejected by the server or cleared, or never reached the queue storage
+     */
+    public boolean isDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(event).append(' ').append(eventId).append(": captured");
+        long previous = capturedNanos;
+        previous = appendStage(builder, "persisted", persistedNanos, previous);
+        previous = appendStage(builder, "sent", sentNanos, previous);
+        if (attempts > 1) {
+            builder.append(" (").append(attempts).append(" attempts)");
+        }
+        appendStage(builder, "acked", ackedNanos, previous);
+        if (dropped) {
+            builder.append(" -> dropped");
+        }
+        return builder.toString();
+    }
+
+    private static long appendStage(StringBuilder builder, String stage, long nanos, long previous) {
+        if (nanos == 0) {
+            return previous;
+        }
+        builder.append(" -> ").append(stage).append(String.format(Locale.US, " +%.2f ms", (nanos - previous) / 1e6));
+        return nanos;
+    }
+}
@@ -0,0 +1,153 @@
+package com.laudspeaker.android;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Follows a sample of events through capture, the queue storage, upload and acknowledgement.
+ * Off unless config.traceSampleRate is above 0, every method then returns after a single read.
+ * Once persisted, a traced event is known by its position in the queue counted since the queue
+ * opened, which is how batches and removals refer to it without reading the records back.
+ * Finished traces are logged at INFO and the most recent ones kept for getCompletedTraces.
+ */
+public class LaudspeakerEventTracer {
+    private static final int MAX_ACTIVE_TRACES = 256;
+    private static final int MAX_COMPLETED_TRACES = 64;
+
+    private final LaudspeakerConfig config;
+    // Sampled on capture threads, waiting for the queue thread to persist them
+    private final Map<UUID, LaudspeakerEventTrace> captured = new ConcurrentHashMap<>();
+    // Persisted traces by queue position
+    private final TreeMap<Long, LaudspeakerEventTrace> queued = new TreeMap<>();
+    private final ArrayDeque<LaudspeakerEventTrace> completed = new ArrayDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public LaudspeakerEventTracer(LaudspeakerConfig config) {
+        this.config = config;
+    }
+
+    public void captured(LaudspeakerEvent event) {
+        double rate = config.getTraceSampleRate();
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return;
+        }
+        if (active.incrementAndGet() > MAX_ACTIVE_TRACES) {
+            active.decrementAndGet();
+            return;
+        }
+        captured.put(event.getEventId(), new LaudspeakerEventTrace(event.getEventId().toString(), event.getEvent(), System.currentTimeMillis(), System.nanoTime()));
+    }
+
+    public void persisted(LaudspeakerEvent event, long position) {
+        if (active.get() == 0) {
+            return;
+        }
+        LaudspeakerEventTrace trace = captured.remove(event.getEventId());
+        if (trace == null) {
+            return;
+        }
+        trace.persistedNanos = System.nanoTime();
+        synchronized (this) {
+            queued.put(position, trace);
+        }
+    }
+
+    /**
+     * The event was dropped before it reached the queue storage, its trace is finished as dropped.
+     */
+    public void dropped(LaudspeakerEvent event) {
+        if (active.get() == 0) {
+            return;
+        }
+        LaudspeakerEventTrace trace = captured.remove(event.getEventId());
+        if (trace == null) {
+            return;
+        }
+        active.decrementAndGet();
+        trace.dropped = true;
+        synchronized (this) {
+            complete(trace);
+        }
+    }
+
+    /**
+     * An upload of the records from position from, inclusive, to to, exclusive, started.
+     */
+    public void sent(long from, long to) {
+        if (active.get() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (LaudspeakerEventTrace trace : queued.subMap(from, to).values()) {
+                if (trace.sentNanos == 0) {
+                    trace.sentNanos = now;
+                }
+                trace.attempts++;
+            }
+        }
+    }
+
+    public void acked(long from, long to) {
+        finish(from, to, false);
+    }
+
+    /**
+     * The records left the queue, the traces not acknowledged yet are finished as dropped.
+     */
+    public void removed(long from, long to) {
+        finish(from, to, true);
+    }
+
+    public void clear() {
+        if (active.get() == 0) {
+            return;
+        }
+        synchronized (this) {
+            active.addAndGet(-captured.size() - queued.size());
+            captured.clear();
+            queued.clear();
+        }
+    }
+
+    public synchronized List<LaudspeakerEventTrace> getCompletedTraces() {
+        return new ArrayList<>(completed);
+    }
+
+    private void finish(long from, long to, boolean dropped) {
+        if (active.get() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            Iterator<LaudspeakerEventTrace> iterator = queued.subMap(from, to).values().iterator();
+            while (iterator.hasNext()) {
+                LaudspeakerEventTrace trace = iterator.next();
+                iterator.remove();
+                active.decrementAndGet();
+                if (dropped) {
+                    trace.dropped = true;
+                } else {
+                    trace.ackedNanos = now;
+                }
+                complete(trace);
+            }
+        }
+    }
+
+    private void complete(LaudspeakerEventTrace trace) {
+        if (completed.size() == MAX_COMPLETED_TRACES) {
+            completed.pollFirst();
+        }
+        completed.addLast(trace);
+        config.getLogger().log(LaudspeakerLogLevel.INFO, "Traced event {}", trace);
+    }
+}
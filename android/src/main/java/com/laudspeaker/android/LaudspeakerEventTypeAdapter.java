@@ -0,0 +1,224 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streaming adapter for LaudspeakerEvent, keeps the field names of the reflective format.
+ */
+public class LaudspeakerEventTypeAdapter extends TypeAdapter<LaudspeakerEvent> {
+    private final Gson gson;
+
+    public LaudspeakerEventTypeAdapter(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public void write(JsonWriter out, LaudspeakerEvent event) throws IOException {
+        if (event == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("event").value(event.getEvent());
+        out.name("correlationKey").value("_id");
+        out.name("correlationValue").value(event.getId());
+        if (event.getProperties() != null) {
+            out.name("payload");
+            writeProperties(out, event.getProperties());
+        } else if (event.getPayload() != null) {
+            out.name("payload");
+            writeValue(out, event.getPayload());
+        }
+        if (event.hasTimestamp()) {
+            out.name("timestamp").value(LaudspeakerJsonFormat.formatIsoDate(event.getTimestampMillis()));
+        }
+        if (event.getEventId() != null) {
+            out.name("uuid").value(LaudspeakerJsonFormat.formatUuid(event.getEventId()));
+        }
+        if (event.getSource() != null) {
+            out.name("source").value(event.getSource());
+        }
+        LaudspeakerEvent.FCMToken fcm = event.getFCMToken();
+        if (fcm != null) {
+            out.name("$fcm").beginObject();
+            if (fcm.getAndroidDeviceToken() != null) {
+                out.name("androidDeviceToken").value(fcm.getAndroidDeviceToken());
+            }
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    private void writeProperties(JsonWriter out, LaudspeakerProperties properties) throws IOException {
+        out.beginObject();
+        for (int i = 0; i < properties.size(); i++) {
+            out.name(properties.key(i));
+            switch (properties.type(i)) {
+                case LaudspeakerProperties.TYPE_LONG:
+                    out.value(properties.longValue(i));
+                    break;
+                case LaudspeakerProperties.TYPE_DOUBLE:
+                    out.value(properties.doubleValue(i));
+                    break;
+                case LaudspeakerProperties.TYPE_BOOLEAN:
+                    out.value(properties.booleanValue(i));
+                    break;
+                default:
+                    out.value(properties.stringValue(i));
+                    break;
+            }
+        }
+        out.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof String) {
+            out.value((String) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof Collection) {
+            out.beginArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(out, item);
+            }
+            out.endArray();
+        } else {
+            ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);
+        }
+    }
+
+    @Override
+    public LaudspeakerEvent read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String event = null;
+        String correlationValue = null;
+        Map<String, Object> payload = null;
+        long timestamp = LaudspeakerEvent.NO_TIMESTAMP;
+        UUID uuid = null;
+        String source = null;
+        boolean hasFcm = false;
+        String fcmToken = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "event":
+                    event = in.nextString();
+                    break;
+                case "correlationValue":
+                    correlationValue = in.nextString();
+                    break;
+                case "payload":
+                    payload = readObject(in);
+                    break;
+                case "timestamp":
+                    Date date = gson.getAdapter(Date.class).read(in);
+                    if (date != null) {
+                        timestamp = date.getTime();
+                    }
+                    break;
+                case "uuid":
+                    uuid = UUID.fromString(in.nextString());
+                    break;
+                case "source":
+                    source = in.nextString();
+                    break;
+                case "$fcm":
+                    hasFcm = true;
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (in.nextName().equals("androidDeviceToken") && in.peek() == JsonToken.STRING) {
+                            fcmToken = in.nextString();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        LaudspeakerEvent result = new LaudspeakerEvent(event, correlationValue, payload, timestamp, uuid);
+        result.setSource(source);
+        if (hasFcm) {
+            result.setFCMToken(fcmToken);
+        }
+        return result;
+    }
+
+    private Map<String, Object> readObject(JsonReader in) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), readValue(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    // Mirrors Gson's ObjectTypeAdapter, numbers are read back as Double
+    private Object readValue(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(in);
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(readValue(in));
+                }
+                in.endArray();
+                return list;
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return in.nextDouble();
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NULL:
+            default:
+                in.nextNull();
+                return null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.laudspeaker.android;
+
+/**
+ * Decides when the queue uploads and how many events go into a batch.
+ * shouldFlush is asked after every group of captured events and on every timed wakeup while
+ * events wait to be sent, the callbacks report each upload attempt. All methods are called on
+ * the queue executor.
+ */
+public interface LaudspeakerFlushPolicy {
+    /**
+     * @param queuedEvents events waiting in the queue
+     * @param queuedBytes approximate size of the queued events
+     * @param oldestEventAgeMillis how long the oldest queued event has been waiting, 0 if none
+     * @param maxBatchSize the configured upper bound of a batch
+     */
+    boolean shouldFlush(int queuedEvents, long queuedBytes, long oldestEventAgeMillis, int maxBatchSize);
+
+    /**
+     * @return the number of events for the next batch, between 1 and maxBatchSize.
+     */
+    int batchSize(int maxBatchSize);
+
+    void onBatchSent(int events, long bytes, long roundTripMillis);
+
+    void onBatchFailed(int events, long bytes);
+}
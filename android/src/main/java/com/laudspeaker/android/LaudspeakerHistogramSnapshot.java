@@ -0,0 +1,62 @@
+package com.laudspeaker.android;
+
+/**
+ * Copy of a LaudspeakerHistogram. Percentiles are reported as the largest value of the bucket
+ * they fall into, capped at the largest recorded value.
+ */
+public class LaudspeakerHistogramSnapshot {
+    private static final LaudspeakerHistogramSnapshot EMPTY = new LaudspeakerHistogramSnapshot(new long[0], 0, 0, 0, 0);
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    public LaudspeakerHistogramSnapshot(long[] counts, long count, long sum, long min, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    public static LaudspeakerHistogramSnapshot empty() {
+        return EMPTY;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LaudspeakerHistogram.highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,100 @@
+package com.laudspeaker.android;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The OkHttpClient every LaudspeakerApi in the process shares, so SDK instances created for push
+ * handling reuse the connections and dispatcher threads of the main one.
+ */
+public final class LaudspeakerHttpClient {
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private static volatile OkHttpClient shared = null;
+
+    private LaudspeakerHttpClient() {
+    }
+
+    public static OkHttpClient shared() {
+        OkHttpClient client = shared;
+        if (client == null) {
+            synchronized (LaudspeakerHttpClient.class) {
+                client = shared;
+                if (client == null) {
+                    client = build();
+                    shared = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private static OkHttpClient build() {
+        return new OkHttpClient.Builder()
+                // HTTP/2 is negotiated over TLS when the server offers it, uploads then share one connection
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .socketFactory(new NoDelaySocketFactory(SocketFactory.getDefault()))
+                .build();
+    }
+
+    /**
+     * Turns Nagle's algorithm off. Request headers and a body streamed from the sealed file go out
+     * as separate writes, with Nagle on the body waits for the ACK of the headers, which the
+     * server may delay by up to 40 ms.
+     */
+    private static final class NoDelaySocketFactory extends SocketFactory {
+        private final SocketFactory delegate;
+
+        NoDelaySocketFactory(SocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return noDelay(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private static Socket noDelay(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+}
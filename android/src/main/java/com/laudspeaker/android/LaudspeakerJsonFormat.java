@@ -0,0 +1,148 @@
+package com.laudspeaker.android;
+
+import java.util.UUID;
+
+/**
+ * Formats timestamps and UUIDs for the wire into per-thread char buffers instead of going
+ * through Calendar, SimpleDateFormat or string concatenation.
+ */
+public final class LaudspeakerJsonFormat {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<char[]> DATE_BUFFER = ThreadLocal.withInitial(() -> new char[24]);
+    private static final ThreadLocal<char[]> UUID_BUFFER = ThreadLocal.withInitial(() -> new char[36]);
+
+    private LaudspeakerJsonFormat() {
+    }
+
+    /**
+     * Formats epoch milliseconds as ISO-8601 in UTC, e.g. 2024-01-19T13:03:33.120Z.
+     */
+    public static String formatIsoDate(long epochMillis) {
+        char[] buffer = DATE_BUFFER.get();
+        long days = Math.floorDiv(epochMillis, 86400000L);
+        int millisOfDay = (int) Math.floorMod(epochMillis, 86400000L);
+
+        // Civil date from days since 1970-01-01 (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        writeDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, millisOfDay / 3600000, 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, millisOfDay / 60000 % 60, 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, millisOfDay / 1000 % 60, 2);
+        buffer[19] = '.';
+        writeDigits(buffer, 20, millisOfDay % 1000, 3);
+        buffer[23] = 'Z';
+        return new String(buffer, 0, 24);
+    }
+
+    /**
+     * Parses the exact format written by formatIsoDate.
+     *
+     * @return epoch milliseconds, or null if the value is in any other format.
+     */
+    public static Long parseIsoDate(String value) {
+        if (value.length() != 24 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != '.' || value.charAt(23) != 'Z') {
+            return null;
+        }
+        int year = readDigits(value, 0, 4);
+        int month = readDigits(value, 5, 2);
+        int day = readDigits(value, 8, 2);
+        int hour = readDigits(value, 11, 2);
+        int minute = readDigits(value, 14, 2);
+        int second = readDigits(value, 17, 2);
+        int millis = readDigits(value, 20, 3);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return null;
+        }
+
+        // Days since 1970-01-01 from a civil date (Howard Hinnant's algorithm)
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+        return days * 86400000L + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+    }
+
+    public static String formatUuid(UUID uuid) {
+        char[] buffer = UUID_BUFFER.get();
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        writeHex(buffer, 0, msb >>> 32, 8);
+        buffer[8] = '-';
+        writeHex(buffer, 9, msb >>> 16, 4);
+        buffer[13] = '-';
+        writeHex(buffer, 14, msb, 4);
+        buffer[18] = '-';
+        writeHex(buffer, 19, lsb >>> 48, 4);
+        buffer[23] = '-';
+        writeHex(buffer, 24, lsb, 12);
+        return new String(buffer, 0, 36);
+    }
+
+    /**
+     * Number of bytes the chars take in UTF-8, a lone surrogate counts as the replacement character.
+     */
+    public static int utf8Length(char[] chars, int offset, int length) {
+        int bytes = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int readDigits(String value, int offset, int width) {
+        int result = 0;
+        for (int i = offset; i < offset + width; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void writeHex(char[] buffer, int offset, long value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
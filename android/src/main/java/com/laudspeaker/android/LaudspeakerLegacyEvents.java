@@ -0,0 +1,207 @@
+package com.laudspeaker.android;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Events left behind by SDK versions that stored one JSON .event file per event.
+ * The import order is persisted in a small manifest on the first directory scan, so an import
+ * interrupted by the process dying resumes from the manifest instead of listing and sorting
+ * tens of thousands of files again. Files are marked as imported in the manifest before they are
+ * deleted, so a file that outlives the process dying after its events were committed is deleted
+ * on the next launch instead of being imported twice.
+ */
+public class LaudspeakerLegacyEvents {
+    private static final String EVENT_SUFFIX = ".event";
+    private static final String MANIFEST_FILE = "legacy.manifest";
+    // Prefixes the name of an imported file, never part of a file name
+    private static final char IMPORTED = '/';
+
+    private final File directory;
+    private final LaudspeakerLogger logger;
+    private String[] names = new String[0];
+    private int next = 0;
+
+    public LaudspeakerLegacyEvents(File directory, LaudspeakerLogger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the import order from the manifest, or scans the directory if there is none.
+     *
+     * @return whether there are files left to import.
+     */
+    public boolean load() {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (manifest.exists()) {
+            try {
+                names = readManifest(manifest);
+                next = 0;
+                if (!hasNext()) {
+                    finish();
+                }
+                return hasNext();
+            } catch (IOException e) {
+                logger.log(LaudspeakerLogLevel.WARN, "Failed to read the legacy manifest, scanning the directory: {}", e);
+            }
+        }
+
+        names = scan();
+        next = 0;
+        if (names.length > 0) {
+            try {
+                writeManifest(manifest);
+            } catch (IOException e) {
+                // The import still works, it is only not resumable without scanning again
+                logger.log(LaudspeakerLogLevel.WARN, "Failed to write the legacy manifest: {}", e);
+            }
+        }
+        return hasNext();
+    }
+
+    public boolean hasNext() {
+        return next < names.length;
+    }
+
+    /**
+     * @return up to max files in import order. Files that are gone by now are skipped.
+     */
+    public List<File> next(int max) {
+        List<File> files = new ArrayList<>(Math.min(max, names.length - next));
+        while (files.size() < max && next < names.length) {
+            File file = new File(directory, names[next++]);
+            if (file.exists()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Marks the files as imported, call once their events are committed and before deleting them.
+     * Nothing is marked without a manifest, the files are then only deleted.
+     */
+    public void imported(List<File> files) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (files.isEmpty() || !manifest.exists()) {
+            return;
+        }
+        try (FileOutputStream output = new FileOutputStream(manifest, true)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            for (File file : files) {
+                writer.write(IMPORTED);
+                writer.write(file.getName());
+                writer.write('\n');
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+    }
+
+    /**
+     * Deletes the manifest once every file is imported.
+     */
+    public void finish() {
+        new File(directory, MANIFEST_FILE).delete();
+    }
+
+    private String[] scan() {
+        String[] all = directory.list();
+        if (all == null) {
+            return new String[0];
+        }
+        int n = 0;
+        String[] found = new String[all.length];
+        for (String name : all) {
+            if (name.endsWith(EVENT_SUFFIX)) {
+                found[n++] = name;
+            }
+        }
+
+        // One stat per file, sorted by creation order with the name as a tie-breaker
+        long[] modified = new long[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            modified[i] = new File(directory, found[i]).lastModified();
+            order[i] = i;
+        }
+        final String[] candidates = found;
+        Arrays.sort(order, (a, b) -> {
+            int byTime = Long.compare(modified[a], modified[b]);
+            return byTime != 0 ? byTime : candidates[a].compareTo(candidates[b]);
+        });
+
+        String[] sorted = new String[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = candidates[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Reads the import order, deleting files marked as imported that are still there. The manifest
+     * is written again without them, which also drops a mark torn by a crash.
+     */
+    private String[] readManifest(File manifest) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Set<String> imported = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.charAt(0) == IMPORTED) {
+                    imported.add(line.substring(1));
+                } else {
+                    lines.add(line);
+                }
+            }
+        }
+        if (imported.isEmpty()) {
+            return lines.toArray(new String[0]);
+        }
+
+        List<String> remaining = new ArrayList<>(lines.size());
+        for (String name : lines) {
+            if (imported.contains(name)) {
+                new File(directory, name).delete();
+            } else {
+                remaining.add(name);
+            }
+        }
+        names = remaining.toArray(new String[0]);
+        if (!remaining.isEmpty()) {
+            writeManifest(manifest);
+        }
+        return names;
+    }
+
+    private void writeManifest(File manifest) throws IOException {
+        File temporary = new File(directory, MANIFEST_FILE + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8))) {
+            for (String name : names) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+        if (!temporary.renameTo(manifest)) {
+            temporary.delete();
+            throw new IOException("Cannot rename " + temporary);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerLogLevel {
+    /*
+    Step by step progress of events and batches, printed when config.debug is on.
+     */
+    DEBUG,
+    /*
+    Lifecycle changes of the SDK such as setup, connectivity and sampled event traces.
+     */
+    INFO,
+    /*
+    Something failed and the SDK recovered, for instance by retrying or dropping events.
+     */
+    WARN,
+    ERROR,
+    /*
+    Records nothing.
+     */
+    NONE,
+}
@@ -0,0 +1,30 @@
+package com.laudspeaker.android;
+
+public class LaudspeakerLogRecord {
+    private final long timeMillis;
+    private final LaudspeakerLogLevel level;
+    private final String message;
+
+    public LaudspeakerLogRecord(long timeMillis, LaudspeakerLogLevel level, String message) {
+        this.timeMillis = timeMillis;
+        this.level = level;
+        this.message = message;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public LaudspeakerLogLevel getLevel() {
+        return level;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return timeMillis + " " + level + " " + message;
+    }
+}
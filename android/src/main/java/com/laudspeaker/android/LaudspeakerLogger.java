@@ -2,21 +2,117 @@ package com.laudspeaker.android;
 
 import com.laudspeaker.android.LaudspeakerConfig;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
- * Logs the messages using System.out only if config.debug is enabled
+ * Records messages at or above the configured level, DEBUG when config.debug is enabled.
+ * Recorded messages are kept in a ring of the most recent ones and printed with System.out only
+ * if config.debug is enabled.
+ * Messages are formatted only once their level is enabled: patterns replace each {} with the
+ * next argument, suppliers are called. An argument the call site already holds as an object costs
+ * nothing on a disabled level, a primitive is boxed before the level is checked. Calls on the
+ * capture and upload paths that pass primitives check isEnabled(level) first.
  */
 public class LaudspeakerLogger {
     private final LaudspeakerConfig config;
+    private LaudspeakerLogRecord[] recent = null;
+    private int next = 0;
+    private int count = 0;
 
     public LaudspeakerLogger(LaudspeakerConfig config) {
         this.config = config;
     }
+
     public void log(String message) {
-        if (isEnabled()) {
-            System.out.println("[Laudspeaker SDK]: " + message);
-        }
+        log(LaudspeakerLogLevel.DEBUG, message);
     }
+
     public boolean isEnabled() {
         return config.isDebug();
     }
-}
\ No newline at end of file
+
+    public boolean isEnabled(LaudspeakerLogLevel level) {
+        LaudspeakerLogLevel threshold = config.isDebug() ? LaudspeakerLogLevel.DEBUG : config.getLogLevel();
+        return level != LaudspeakerLogLevel.NONE && level.ordinal() >= threshold.ordinal();
+    }
+
+    public void log(LaudspeakerLogLevel level, String message) {
+        if (isEnabled(level)) {
+            record(level, message);
+        }
+    }
+
+    public void log(LaudspeakerLogLevel level, String pattern, Object arg) {
+        if (isEnabled(level)) {
+            record(level, format(pattern, arg, null, null, 1));
+        }
+    }
+
+    public void log(LaudspeakerLogLevel level, String pattern, Object arg1, Object arg2) {
+        if (isEnabled(level)) {
+            record(level, format(pattern, arg1, arg2, null, 2));
+        }
+    }
+
+    public void log(LaudspeakerLogLevel level, String pattern, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(level)) {
+            record(level, format(pattern, arg1, arg2, arg3, 3));
+        }
+    }
+
+    public void log(LaudspeakerLogLevel level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            record(level, message.get());
+        }
+    }
+
+    /**
+     * @return the most recent records, oldest first
+     */
+    public synchronized List<LaudspeakerLogRecord> getRecentRecords() {
+        List<LaudspeakerLogRecord> records = new ArrayList<>(count);
+        if (recent == null) {
+            return records;
+        }
+        int start = (next - count + recent.length) % recent.length;
+        for (int i = 0; i < count; i++) {
+            records.add(recent[(start + i) % recent.length]);
+        }
+        return records;
+    }
+
+    private void record(LaudspeakerLogLevel level, String message) {
+        synchronized (this) {
+            int capacity = config.getLogBufferSize();
+            if (capacity > 0) {
+                if (recent == null || recent.length != capacity) {
+                    recent = new LaudspeakerLogRecord[capacity];
+                    next = 0;
+                    count = 0;
+                }
+                recent[next] = new LaudspeakerLogRecord(System.currentTimeMillis(), level, message);
+                next = (next + 1) % capacity;
+                count = Math.min(count + 1, capacity);
+            }
+        }
+        if (config.isDebug()) {
+            System.out.println("[Laudspeaker SDK]: " + message);
+        }
+    }
+
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3, int argCount) {
+        StringBuilder builder = new StringBuilder(pattern.length() + 32);
+        int from = 0;
+        for (int i = 0; i < argCount; i++) {
+            int at = pattern.indexOf("{}", from);
+            if (at < 0) {
+                break;
+            }
+            builder.append(pattern, from, at).append(i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+            from = at + 2;
+        }
+        return builder.append(pattern, from, pattern.length()).toString();
+    }
+}
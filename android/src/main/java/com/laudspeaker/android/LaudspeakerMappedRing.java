@@ -0,0 +1,439 @@
+package com.laudspeaker.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity ring of queued events in a memory-mapped file.
+ * Records are stored as [int length][bytes] and never split across the end of the ring, a length
+ * of -1 marks the wrap-around point. Head, tail and record count live in a small header at the
+ * start of the mapped file, so enqueueing is a bounds check plus a copy into the mapping.
+ * A replaced record is not overwritten: the new one is written after the tail, flagged as
+ * superseding, and the old one is flagged dead once the tail moved past it. Readers skip dead
+ * records, and open finishes a replacement that a crash left halfway.
+ * Slots are overwritten as the ring wraps, so records carry their strings inline and no dictionary is kept.
+ * Writes land in the page cache through the mapping, commit forces the mapping to disk when the
+ * durability asks for it.
+ */
+public class LaudspeakerMappedRing implements LaudspeakerQueueStorage {
+    private static final int MAGIC = 0x4C53524E; // "LSRN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int HEAD_OFFSET = 12;
+    private static final int TAIL_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+    private static final int LENGTH_SIZE = 4;
+    private static final int WRAP_MARKER = -1;
+    private static final int DEAD = 0x40000000;
+    private static final int SUPERSEDES = 0x20000000;
+    private static final int LENGTH_MASK = 0x1FFFFFFF;
+
+    private final File file;
+    private final int capacity;
+    private final LaudspeakerDurability durability;
+    private final LaudspeakerLogger logger;
+
+    private RandomAccessFile randomAccessFile = null;
+    private MappedByteBuffer buffer = null;
+    private int head = 0;
+    private int tail = 0;
+    // Start of the tail record, not kept in the header and found again on open
+    private int last = 0;
+    private int count = 0;
+    private long bytes = 0;
+    private boolean unsynced = false;
+    // Set by close, only an explicit open brings the storage back
+    private boolean closed = false;
+
+    public LaudspeakerMappedRing(File file, int capacity, LaudspeakerDurability durability, LaudspeakerLogger logger) {
+        this.file = file;
+        this.capacity = capacity;
+        this.durability = durability;
+        this.logger = logger;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        closed = false;
+        ensureOpen();
+    }
+
+    @Override
+    public synchronized boolean append(RecordEncoder encoder) throws IOException {
+        ensureOpen();
+
+        byte[] record = encoder.encode(null);
+        int needed = LENGTH_SIZE + record.length;
+        if (needed > capacity) {
+            throw new IOException("Record of " + record.length + " bytes exceeds the ring capacity.");
+        }
+
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+        }
+        int position = reserve(needed);
+        if (position < 0) {
+            return false;
+        }
+
+        buffer.putInt(HEADER_SIZE + position, record.length);
+        buffer.position(HEADER_SIZE + position + LENGTH_SIZE);
+        buffer.put(record);
+
+        last = position;
+        tail = position + needed;
+        count++;
+        bytes += needed;
+        writeHeader();
+        unsynced = true;
+        if (durability == LaudspeakerDurability.EVERY_EVENT) {
+            commit();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replaceLast(RecordEncoder encoder) throws IOException {
+        ensureOpen();
+        if (count == 0) {
+            return false;
+        }
+        byte[] record = encoder.encode(null);
+        int needed = LENGTH_SIZE + record.length;
+        if (needed > capacity) {
+            return false;
+        }
+        // The old record stays until the new one is in place, so both have to fit
+        int position = reserve(needed);
+        if (position < 0) {
+            return false;
+        }
+
+        buffer.putInt(HEADER_SIZE + position, record.length | SUPERSEDES);
+        buffer.position(HEADER_SIZE + position + LENGTH_SIZE);
+        buffer.put(record);
+        tail = position + needed;
+        writeHeader();
+
+        int previous = buffer.getInt(HEADER_SIZE + last) & LENGTH_MASK;
+        buffer.putInt(HEADER_SIZE + last, previous | DEAD);
+        last = position;
+        bytes += needed - LENGTH_SIZE - previous;
+        unsynced = true;
+        if (durability == LaudspeakerDurability.EVERY_EVENT) {
+            commit();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void commit() {
+        if (buffer == null || !unsynced || durability == LaudspeakerDurability.NONE) {
+            return;
+        }
+        buffer.force();
+        unsynced = false;
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized long byteSize() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized List<LaudspeakerQueueRecord> peek(int offset, int maxRecords, long maxBytes) throws IOException {
+        ensureOpen();
+
+        int n = Math.min(maxRecords, count - offset);
+        List<LaudspeakerQueueRecord> records = new ArrayList<>(Math.max(0, Math.min(n, 256)));
+        int position = head;
+        for (int i = 0; i < offset && i < count; i++) {
+            position = liveStart(position);
+            position += LENGTH_SIZE + lengthAt(position);
+        }
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            position = liveStart(position);
+            int length = lengthAt(position);
+            total += LENGTH_SIZE + length;
+            if (i > 0 && total > maxBytes) {
+                break;
+            }
+            byte[] record = new byte[length];
+            buffer.position(HEADER_SIZE + position + LENGTH_SIZE);
+            buffer.get(record);
+            records.add(new LaudspeakerQueueRecord(record, null));
+            position += LENGTH_SIZE + record.length;
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized void remove(int n) throws IOException {
+        ensureOpen();
+
+        n = Math.min(n, count);
+        for (int i = 0; i < n; i++) {
+            head = liveStart(head);
+            int needed = LENGTH_SIZE + lengthAt(head);
+            head += needed;
+            bytes -= needed;
+        }
+        count -= n;
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+            bytes = 0;
+        }
+        writeHeader();
+        // The moved head is forced with the next commit
+        unsynced = true;
+    }
+
+    @Override
+    public synchronized void removeLast(int n) throws IOException {
+        ensureOpen();
+
+        n = Math.min(n, count);
+        if (n <= 0) {
+            return;
+        }
+        count -= n;
+        tail = walk();
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+            last = 0;
+        }
+        writeHeader();
+        unsynced = true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            ensureOpen();
+            head = 0;
+            tail = 0;
+            count = 0;
+            bytes = 0;
+            writeHeader();
+            unsynced = true;
+        } catch (IOException e) {
+            logger.log(LaudspeakerLogLevel.WARN, "Failed to clear the ring: {}", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        commit();
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+        randomAccessFile = null;
+        buffer = null;
+        head = 0;
+        tail = 0;
+        last = 0;
+        count = 0;
+        bytes = 0;
+        closed = true;
+        unsynced = false;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer != null) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("Ring is closed.");
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        int previousCapacity = capacityOf(file);
+        if (previousCapacity > 0 && previousCapacity != capacity) {
+            resize(previousCapacity);
+        }
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        long previousLength = randomAccessFile.length();
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+
+        if (previousLength == HEADER_SIZE + capacity && buffer.getInt(MAGIC_OFFSET) == MAGIC && buffer.getInt(VERSION_OFFSET) == VERSION && buffer.getInt(CAPACITY_OFFSET) == capacity) {
+            head = buffer.getInt(HEAD_OFFSET);
+            tail = buffer.getInt(TAIL_OFFSET);
+            count = buffer.getInt(COUNT_OFFSET);
+            if (head < 0 || head > capacity || tail < 0 || tail > capacity || count < 0) {
+                logger.log(LaudspeakerLogLevel.WARN, "Ring header is corrupted, dropping queued events.");
+                head = 0;
+                tail = 0;
+                count = 0;
+            }
+        } else {
+            if (previousLength > 0) {
+                logger.log(LaudspeakerLogLevel.WARN, "Ring file is not compatible, dropping queued events.");
+            }
+            head = 0;
+            tail = 0;
+            count = 0;
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+        }
+        writeHeader();
+        int end = walk();
+        if (end != tail) {
+            // A crash moved the tail past a record the count does not include yet
+            int position = recordStart(end);
+            if (count > 0 && (buffer.getInt(HEADER_SIZE + position) & SUPERSEDES) != 0) {
+                // The replacement is in place, the record it replaces was not flagged dead yet
+                buffer.putInt(HEADER_SIZE + last, lengthAt(last) | DEAD);
+                end = walk();
+            } else {
+                // An append that never finished
+                tail = end;
+                writeHeader();
+            }
+        }
+        logger.log(LaudspeakerLogLevel.DEBUG, "Ring opened with {} queued records.", count);
+    }
+
+    /**
+     * Finds the tail record and the byte size by walking the records from the head.
+     *
+     * @return where the records end
+     */
+    private int walk() {
+        bytes = 0;
+        last = head;
+        int position = head;
+        for (int i = 0; i < count; i++) {
+            position = liveStart(position);
+            last = position;
+            int needed = LENGTH_SIZE + lengthAt(position);
+            bytes += needed;
+            position += needed;
+        }
+        return position;
+    }
+
+    /**
+     * @return where a record of needed bytes goes after the tail, writing the wrap marker if it goes
+     * to the start of the ring, or -1 if it does not fit
+     */
+    private int reserve(int needed) {
+        if (count > 0 && tail == head) {
+            return -1;
+        }
+        if (tail > head || count == 0) {
+            if (capacity - tail >= needed) {
+                return tail;
+            } else if (head >= needed) {
+                if (capacity - tail >= LENGTH_SIZE) {
+                    buffer.putInt(HEADER_SIZE + tail, WRAP_MARKER);
+                }
+                return 0;
+            }
+            return -1;
+        }
+        return head - tail >= needed ? tail : -1;
+    }
+
+    /**
+     * Moves the records of a ring written with another capacity into a file of this one, oldest
+     * first. The old file is replaced only once the copy is on disk, records that do not fit are dropped.
+     */
+    private void resize(int previousCapacity) throws IOException {
+        File resized = new File(file.getPath() + ".resized");
+        resized.delete();
+        LaudspeakerMappedRing previous = new LaudspeakerMappedRing(file, previousCapacity, LaudspeakerDurability.NONE, logger);
+        LaudspeakerMappedRing next = new LaudspeakerMappedRing(resized, capacity, LaudspeakerDurability.BATCH, logger);
+        int total;
+        int moved = 0;
+        try {
+            previous.open();
+            total = previous.size();
+            next.open();
+            for (LaudspeakerQueueRecord record : previous.peek(0, total, Long.MAX_VALUE)) {
+                byte[] data = record.getData();
+                if (LENGTH_SIZE + data.length > capacity || !next.append(dictionary -> data)) {
+                    break;
+                }
+                moved++;
+            }
+        } finally {
+            previous.close();
+            next.close();
+        }
+        if (!resized.renameTo(file)) {
+            resized.delete();
+            throw new IOException("Cannot replace " + file + " with the resized ring.");
+        }
+        logger.log(LaudspeakerLogLevel.INFO, "Ring capacity changed from {} to {} bytes, moved {} queued events.", previousCapacity, capacity, moved);
+        if (moved < total) {
+            logger.log(LaudspeakerLogLevel.WARN, "Resized ring is full, {} queued events are dropped.", total - moved);
+        }
+    }
+
+    /**
+     * @return the capacity of the ring in file, or 0 if it is not one
+     */
+    private static int capacityOf(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return 0;
+        }
+        try (RandomAccessFile ring = new RandomAccessFile(file, "r")) {
+            if (ring.readInt() != MAGIC || ring.readInt() != VERSION) {
+                return 0;
+            }
+            int capacity = ring.readInt();
+            return capacity > 0 && ring.length() == (long) HEADER_SIZE + capacity ? capacity : 0;
+        }
+    }
+
+    private int liveStart(int position) {
+        position = recordStart(position);
+        int length;
+        while (((length = buffer.getInt(HEADER_SIZE + position)) & DEAD) != 0) {
+            position = recordStart(position + LENGTH_SIZE + (length & LENGTH_MASK));
+        }
+        return position;
+    }
+
+    private int lengthAt(int position) {
+        return buffer.getInt(HEADER_SIZE + position) & LENGTH_MASK;
+    }
+
+    private int recordStart(int position) {
+        if (capacity - position < LENGTH_SIZE || buffer.getInt(HEADER_SIZE + position) == WRAP_MARKER) {
+            return 0;
+        }
+        return position;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(HEAD_OFFSET, head);
+        buffer.putInt(TAIL_OFFSET, tail);
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+}
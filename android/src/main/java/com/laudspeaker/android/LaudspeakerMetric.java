@@ -0,0 +1,73 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerMetric {
+    /*
+    Events handed to the queue by capture.
+     */
+    EVENTS_CAPTURED(LaudspeakerMetricType.COUNTER),
+    /*
+    Capture calls refused because the instance is disabled or the customer ID is invalid.
+     */
+    EVENTS_REJECTED(LaudspeakerMetricType.COUNTER),
+    /*
+    Events written to the queue storage.
+     */
+    EVENTS_QUEUED(LaudspeakerMetricType.COUNTER),
+    /*
+    Events lost to a full staging buffer or to the queue size and byte limits.
+     */
+    EVENTS_DROPPED(LaudspeakerMetricType.COUNTER),
+    /*
+    $set and $identify events merged into the update queued before them instead of being queued.
+     */
+    EVENTS_COALESCED(LaudspeakerMetricType.COUNTER),
+    EVENTS_SENT(LaudspeakerMetricType.COUNTER),
+    BATCHES_SENT(LaudspeakerMetricType.COUNTER),
+    BATCHES_FAILED(LaudspeakerMetricType.COUNTER),
+    /*
+    Failed batches that are kept to be uploaded again.
+     */
+    BATCH_RETRIES(LaudspeakerMetricType.COUNTER),
+    /*
+    HTTP requests that failed or got an unsuccessful response.
+     */
+    REQUESTS_FAILED(LaudspeakerMetricType.COUNTER),
+    QUEUE_DEPTH(LaudspeakerMetricType.GAUGE),
+    QUEUE_BYTES(LaudspeakerMetricType.GAUGE),
+    BATCHES_IN_FLIGHT(LaudspeakerMetricType.GAUGE),
+    /*
+    Time spent in capture, from the properties to the staging buffer.
+     */
+    CAPTURE_LATENCY(LaudspeakerMetricType.HISTOGRAM),
+    /*
+    Time to encode an event and append it to the queue storage.
+     */
+    ENQUEUE_LATENCY(LaudspeakerMetricType.HISTOGRAM),
+    /*
+    Time from the start of a batch upload until its outcome, retries of the request included.
+     */
+    FLUSH_LATENCY(LaudspeakerMetricType.HISTOGRAM),
+    /*
+    Time of a single HTTP request.
+     */
+    REQUEST_LATENCY(LaudspeakerMetricType.HISTOGRAM),
+    /*
+    Events per uploaded batch.
+     */
+    BATCH_EVENTS(LaudspeakerMetricType.HISTOGRAM),
+    /*
+    Uncompressed bytes per uploaded batch.
+     */
+    BATCH_BYTES(LaudspeakerMetricType.HISTOGRAM),
+    ;
+
+    private final LaudspeakerMetricType type;
+
+    LaudspeakerMetric(LaudspeakerMetricType type) {
+        this.type = type;
+    }
+
+    public LaudspeakerMetricType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,16 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerMetricType {
+    /*
+    Only goes up, recorded with increment.
+     */
+    COUNTER,
+    /*
+    The last value set, recorded with gauge.
+     */
+    GAUGE,
+    /*
+    Distribution of recorded values, latencies are in nanoseconds.
+     */
+    HISTOGRAM,
+}
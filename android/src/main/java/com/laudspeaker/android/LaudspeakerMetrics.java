@@ -0,0 +1,19 @@
+package com.laudspeaker.android;
+
+/**
+ * Receives the health measurements of the SDK.
+ * Methods are called on capture threads, the queue thread and the upload threads, and sit on
+ * their hot paths, so they must be thread-safe and should neither block nor allocate.
+ */
+public interface LaudspeakerMetrics {
+    void increment(LaudspeakerMetric counter, long delta);
+
+    void gauge(LaudspeakerMetric gauge, long value);
+
+    /**
+     * @param value a latency in nanoseconds, or a size for the batch histograms
+     */
+    void record(LaudspeakerMetric histogram, long value);
+
+    LaudspeakerMetricsSnapshot snapshot();
+}
@@ -0,0 +1,39 @@
+package com.laudspeaker.android;
+
+/**
+ * Point-in-time copy of the metrics. Values are read one by one, so a snapshot taken while
+ * events flow is not a consistent cut across metrics.
+ */
+public class LaudspeakerMetricsSnapshot {
+    private static final LaudspeakerMetricsSnapshot EMPTY = new LaudspeakerMetricsSnapshot(
+            new long[LaudspeakerMetric.values().length],
+            new long[LaudspeakerMetric.values().length],
+            new LaudspeakerHistogramSnapshot[LaudspeakerMetric.values().length]);
+
+    private final long[] counters;
+    private final long[] gauges;
+    private final LaudspeakerHistogramSnapshot[] histograms;
+
+    public LaudspeakerMetricsSnapshot(long[] counters, long[] gauges, LaudspeakerHistogramSnapshot[] histograms) {
+        this.counters = counters;
+        this.gauges = gauges;
+        this.histograms = histograms;
+    }
+
+    public static LaudspeakerMetricsSnapshot empty() {
+        return EMPTY;
+    }
+
+    public long getCounter(LaudspeakerMetric counter) {
+        return counters[counter.ordinal()];
+    }
+
+    public long getGauge(LaudspeakerMetric gauge) {
+        return gauges[gauge.ordinal()];
+    }
+
+    public LaudspeakerHistogramSnapshot getHistogram(LaudspeakerMetric histogram) {
+        LaudspeakerHistogramSnapshot snapshot = histograms[histogram.ordinal()];
+        return snapshot != null ? snapshot : LaudspeakerHistogramSnapshot.empty();
+    }
+}
@@ -0,0 +1,51 @@
+package com.laudspeaker.android;
+
+/**
+ * Snapshot of the default network as last reported by the connectivity source.
+ */
+public final class LaudspeakerNetworkState {
+    public static final LaudspeakerNetworkState DISCONNECTED = new LaudspeakerNetworkState(false, false, LaudspeakerNetworkTransport.NONE);
+
+    private final boolean connected;
+    private final boolean metered;
+    private final LaudspeakerNetworkTransport transport;
+
+    public LaudspeakerNetworkState(boolean connected, boolean metered, LaudspeakerNetworkTransport transport) {
+        this.connected = connected;
+        this.metered = metered;
+        this.transport = transport;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isMetered() {
+        return metered;
+    }
+
+    public LaudspeakerNetworkTransport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LaudspeakerNetworkState)) return false;
+        LaudspeakerNetworkState that = (LaudspeakerNetworkState) o;
+        return connected == that.connected && metered == that.metered && transport == that.transport;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = connected ? 1 : 0;
+        result = 31 * result + (metered ? 1 : 0);
+        result = 31 * result + transport.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return connected ? transport + (metered ? " (metered)" : "") : "offline";
+    }
+}
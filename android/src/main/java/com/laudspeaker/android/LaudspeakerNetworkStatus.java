@@ -1,26 +1,75 @@
 package com.laudspeaker.android;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cached state of the default network, kept up to date by a connectivity source instead of
+ * asking ConnectivityManager on every flush. Listeners hear about changes of the state only.
+ */
 public class LaudspeakerNetworkStatus {
-    private final Context context;
+    private final LaudspeakerConnectivitySource source;
+    private final CopyOnWriteArrayList<LaudspeakerConnectivitySource.Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile LaudspeakerNetworkState state = null;
 
     public LaudspeakerNetworkStatus(Context context) {
-        this.context = context;
+        this(new LaudspeakerAndroidConnectivitySource(context));
+    }
+
+    public LaudspeakerNetworkStatus(LaudspeakerConnectivitySource source) {
+        this.source = source;
+        LaudspeakerNetworkState initial = source.register(this::update);
+        synchronized (this) {
+            // A change reported while registering is newer than the initial state
+            if (state == null) {
+                state = initial;
+            }
+        }
     }
 
     public boolean isConnected() {
-        return isConnected(context);
+        return state.isConnected();
+    }
+
+    public boolean isMetered() {
+        return state.isMetered();
+    }
+
+    public LaudspeakerNetworkTransport getTransport() {
+        return state.getTransport();
+    }
+
+    public LaudspeakerNetworkState getState() {
+        return state;
+    }
+
+    public void addListener(LaudspeakerConnectivitySource.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LaudspeakerConnectivitySource.Listener listener) {
+        listeners.remove(listener);
     }
 
-    private static boolean isConnected(Context context) {
-        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (connectivityManager != null) {
-            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-            return activeNetwork != null && activeNetwork.isConnected();
+    /**
+     * Stops following the network, the last known state is kept.
+     */
+    public void close() {
+        source.unregister();
+    }
+
+    private void update(LaudspeakerNetworkState newState) {
+        LaudspeakerNetworkState previous;
+        synchronized (this) {
+            previous = state;
+            state = newState;
+        }
+        if (newState.equals(previous)) {
+            return;
+        }
+        for (LaudspeakerConnectivitySource.Listener listener : listeners) {
+            listener.onNetworkChanged(newState);
         }
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerNetworkTransport {
+    /*
+    No network, or one the SDK cannot reach the internet through.
+     */
+    NONE,
+    WIFI,
+    CELLULAR,
+    ETHERNET,
+    /*
+    VPN, Bluetooth tethering and anything else that carries internet traffic.
+     */
+    OTHER,
+}
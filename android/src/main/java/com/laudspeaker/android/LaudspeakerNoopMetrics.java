@@ -0,0 +1,23 @@
+package com.laudspeaker.android;
+
+/**
+ * The default metrics, discards everything and reports an empty snapshot.
+ */
+public class LaudspeakerNoopMetrics implements LaudspeakerMetrics {
+    @Override
+    public void increment(LaudspeakerMetric counter, long delta) {
+    }
+
+    @Override
+    public void gauge(LaudspeakerMetric gauge, long value) {
+    }
+
+    @Override
+    public void record(LaudspeakerMetric histogram, long value) {
+    }
+
+    @Override
+    public LaudspeakerMetricsSnapshot snapshot() {
+        return LaudspeakerMetricsSnapshot.empty();
+    }
+}
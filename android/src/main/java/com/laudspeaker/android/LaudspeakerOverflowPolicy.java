@@ -0,0 +1,14 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerOverflowPolicy {
+    /*
+    The event that finds the staging buffer full is dropped and counted, capture never blocks.
+     */
+    DROP_NEWEST,
+    /*
+    The event that finds the staging buffer full is handed to the queue executor as its own task,
+    nothing is lost but the executor queue is unbounded again while the burst lasts. Events that
+    overflow before the queue storage is open are held in memory until it is.
+     */
+    SUBMIT_TO_EXECUTOR,
+}
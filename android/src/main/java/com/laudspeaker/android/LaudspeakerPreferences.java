@@ -7,6 +7,8 @@ import android.content.SharedPreferences;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LaudspeakerPreferences {
     // Constants
@@ -19,11 +21,33 @@ public class LaudspeakerPreferences {
     public static final String HOST = "host";
     public static final String API_KEY = "api_key";
     public static final String ACTIVITY_CLASS = "activity_class";
-    public static final Set<String> ALL_INTERNAL_KEYS = Set.of(CUSTOMER_ID, PRIMARY_KEY, FCM_TOKEN, VERSION, BUILD, HOST, API_KEY, ACTIVITY_CLASS);
+    public static final String BATCH_SEQUENCE = "batch_sequence";
+    public static final Set<String> ALL_INTERNAL_KEYS = Set.of(CUSTOMER_ID, PRIMARY_KEY, FCM_TOKEN, VERSION, BUILD, HOST, API_KEY, ACTIVITY_CLASS, BATCH_SEQUENCE);
+    // Keys the API request path caches, see getRevision
+    private static final Set<String> API_KEYS = Set.of(HOST, API_KEY, FCM_TOKEN);
+    // One revision per preferences file, Android hands out one SharedPreferences instance per file
+    private static final Map<SharedPreferences, AtomicInteger> REVISIONS = new WeakHashMap<>();
     private final SharedPreferences preferences;
+    private final AtomicInteger revision;
 
     public LaudspeakerPreferences(Context context) {
-        preferences = context.getSharedPreferences(PREFERENCES_FILE_KEY, Context.MODE_PRIVATE);
+        this(context.getSharedPreferences(PREFERENCES_FILE_KEY, Context.MODE_PRIVATE));
+    }
+
+    public LaudspeakerPreferences(SharedPreferences preferences) {
+        this.preferences = preferences;
+        this.revision = revisionOf(preferences);
+    }
+
+    private static AtomicInteger revisionOf(SharedPreferences preferences) {
+        synchronized (REVISIONS) {
+            AtomicInteger revision = REVISIONS.get(preferences);
+            if (revision == null) {
+                revision = new AtomicInteger(0);
+                REVISIONS.put(preferences, revision);
+            }
+            return revision;
+        }
     }
 
     public Object getValue(String key, Object defaultValue) {
@@ -44,6 +68,9 @@ public class LaudspeakerPreferences {
         // For simplicity, let's convert everything to String.
         editor.putString(key, value.toString());
         editor.apply();
+        if (API_KEYS.contains(key)) {
+            revision.incrementAndGet();
+        }
     }
 
     public void clear(List<String> exceptKeys) {
@@ -54,12 +81,24 @@ public class LaudspeakerPreferences {
             }
         }
         editor.apply();
+        revision.incrementAndGet();
     }
 
     public void remove(String key) {
         SharedPreferences.Editor editor = preferences.edit();
         editor.remove(key);
         editor.apply();
+        if (API_KEYS.contains(key)) {
+            revision.incrementAndGet();
+        }
+    }
+
+    /**
+     * Moves whenever the host, the API key or the FCM token change through any instance on the same
+     * preferences file, so the request path can keep them in memory and only compare this number.
+     */
+    public int getRevision() {
+        return revision.get();
     }
 
     public Map<String, ?> getAll() {
@@ -0,0 +1,161 @@
+package com.laudspeaker.android;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Event properties kept in parallel arrays, so numbers and booleans are stored unboxed and no
+ * hash table is built. The queue encodes them straight into the record, in insertion order.
+ * Putting a key that is already present replaces its value. Once passed to capture the
+ * properties are shared with the queue and can no longer be changed.
+ */
+public class LaudspeakerProperties {
+    static final byte TYPE_LONG = 0;
+    static final byte TYPE_DOUBLE = 1;
+    static final byte TYPE_BOOLEAN = 2;
+    static final byte TYPE_STRING = 3;
+
+    private String[] keys;
+    private byte[] types;
+    // Longs, raw double bits, or 0/1 for booleans
+    private long[] numbers;
+    // Allocated on the first string value
+    private String[] strings = null;
+    private int size = 0;
+    private volatile boolean sealed = false;
+
+    public LaudspeakerProperties() {
+        this(8);
+    }
+
+    public LaudspeakerProperties(int capacity) {
+        capacity = Math.max(1, capacity);
+        keys = new String[capacity];
+        types = new byte[capacity];
+        numbers = new long[capacity];
+    }
+
+    public LaudspeakerProperties putLong(String key, long value) {
+        int index = slot(key);
+        types[index] = TYPE_LONG;
+        numbers[index] = value;
+        return this;
+    }
+
+    public LaudspeakerProperties putDouble(String key, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification.");
+        }
+        int index = slot(key);
+        types[index] = TYPE_DOUBLE;
+        numbers[index] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public LaudspeakerProperties putBoolean(String key, boolean value) {
+        int index = slot(key);
+        types[index] = TYPE_BOOLEAN;
+        numbers[index] = value ? 1 : 0;
+        return this;
+    }
+
+    public LaudspeakerProperties putString(String key, String value) {
+        int index = slot(key);
+        if (strings == null) {
+            strings = new String[keys.length];
+        }
+        types[index] = TYPE_STRING;
+        strings[index] = value;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    String key(int index) {
+        return keys[index];
+    }
+
+    byte type(int index) {
+        return types[index];
+    }
+
+    long longValue(int index) {
+        return numbers[index];
+    }
+
+    double doubleValue(int index) {
+        return Double.longBitsToDouble(numbers[index]);
+    }
+
+    boolean booleanValue(int index) {
+        return numbers[index] != 0;
+    }
+
+    String stringValue(int index) {
+        return strings[index];
+    }
+
+    Object value(int index) {
+        switch (types[index]) {
+            case TYPE_LONG:
+                return numbers[index];
+            case TYPE_DOUBLE:
+                return doubleValue(index);
+            case TYPE_BOOLEAN:
+                return booleanValue(index);
+            default:
+                return strings[index];
+        }
+    }
+
+    /**
+     * Boxes every value into a new map, for callers such as a properties sanitizer that need a Map.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], value(i));
+        }
+        return map;
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    private int slot(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Property key cannot be null.");
+        }
+        if (sealed) {
+            throw new IllegalStateException("Properties cannot be changed after they were captured.");
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                if (strings != null) {
+                    strings[i] = null;
+                }
+                return i;
+            }
+        }
+        if (size == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            if (strings != null) {
+                strings = Arrays.copyOf(strings, capacity);
+            }
+        }
+        keys[size] = key;
+        return size++;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -1,229 +1,882 @@
 package com.laudspeaker.android;
 
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LaudspeakerQueue {
+    // Storage directories held by a queue in this process, so a drain job never shares one with the SDK
+    private static final Set<String> OPEN_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
     private final LaudspeakerConfig config;
     private final LaudspeakerApi api;
     private final LaudspeakerApiEndpoint endpoint;
     private final String storagePrefix;
     private final ExecutorService executor;
-    private final Deque<File> deque = new ArrayDeque<>();
-    private final Object dequeLock = new Object();
-    private final Object timerLock = new Object();
-    private Date pausedUntil = null;
+    private final ExecutorService uploadExecutor;
+    private final LaudspeakerQueueStorage storage;
+    private final File directory;
+    private final LaudspeakerEventCodec codec;
+    private final File sealedDir;
+    private final LaudspeakerBatchJournal journal;
+    private final LaudspeakerStagingBuffer<LaudspeakerEvent> staging;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicInteger droppedEvents = new AtomicInteger(0);
+    private final Runnable drainTask = this::drainStaging;
+    // Events handed to the executor by SUBMIT_TO_EXECUTOR before the storage was claimed, staged
+    // after the staging buffer once it is. Only touched on the executor
+    private final ArrayDeque<LaudspeakerEvent> overflowed = new ArrayDeque<>();
+    // Only touched on the executor, cleared by stop so pending import chunks bail out
+    private LaudspeakerLegacyEvents legacyEvents = null;
+    private static final int LEGACY_IMPORT_CHUNK = 200;
+    // Rewritten with the live batches only once it grows past this
+    private static final long MAX_JOURNAL_BYTES = 64 * 1024;
+    private static final String BATCH_PREFIX = "{\"batch\":[";
+    private static final String SET = "$set";
+    private static final String IDENTIFY = "$identify";
+    private static final String DISTINCT_ID = "distinct_id";
+    // Sealed batches in storage order, records are removed once every batch before them is acknowledged.
+    // Only touched on the executor
+    private final ArrayDeque<PendingBatch> sealedBatches = new ArrayDeque<>();
+    private int sealedRecords = 0;
+    // Records removed from the head since the queue opened, the position of a record is this plus its offset
+    private long removedRecords = 0;
+    // Records of batches that are uploading or acknowledged, read by the timer to see what is left to send
+    private volatile int awaitingRecords = 0;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private long nextSequence = -1;
+    private boolean draining = false;
+    private boolean pumping = false;
+    private boolean pumpAgain = false;
+    // Backoff deadline on the nanoTime clock, which wall clock changes do not move
+    private boolean paused = false;
+    private long pausedUntilNanos = 0;
     private int retryCount = 0;
     private final int retryDelaySeconds = 5;
     private final int maxRetryDelaySeconds = 30;
-    private volatile Timer timer = null;
-    private volatile TimerTask timerTask = null;
-    private final AtomicBoolean isFlushing = new AtomicBoolean(false);
-    private boolean dirCreated = false;
+    // Timed flushes, armed on the executor only while events are waiting to be sent
+    private final Runnable wakeupTask = this::onWakeup;
+    private ScheduledFuture<?> wakeup = null;
+    private long wakeupAtNanos = 0;
+    private volatile boolean running = false;
+    private final LaudspeakerConnectivitySource.Listener networkListener = this::onNetworkChanged;
+    // Only touched on the executor
+    private boolean claimed = false;
+    private DrainListener drainListener = null;
+    private boolean backgroundDrainRequested = false;
+    // Wall clock time the oldest queued event was staged at, 0 while the queue is empty
+    private volatile long oldestQueuedAtMillis = 0;
+    // Update written last, merged into while its record is still the unsealed tail. Only touched on the executor
+    private LaudspeakerEvent lastUpdate = null;
 
     private long getDelay() {
         return (long) config.getFlushIntervalSeconds() * 1000;
     }
 
     public LaudspeakerQueue(LaudspeakerConfig config, LaudspeakerApi api, LaudspeakerApiEndpoint endpoint, String storagePrefix, ExecutorService executor) {
+        this(config, api, endpoint, storagePrefix, executor, newUploadExecutor(config.getMaxInFlightBatches()));
+    }
+
+    public LaudspeakerQueue(LaudspeakerConfig config, LaudspeakerApi api, LaudspeakerApiEndpoint endpoint, String storagePrefix, ExecutorService executor, ExecutorService uploadExecutor) {
         this.config = config;
         this.api = api;
         this.endpoint = endpoint;
         this.storagePrefix = storagePrefix;
         this.executor = executor;
+        this.uploadExecutor = uploadExecutor;
+        this.directory = storagePrefix != null ? new File(storagePrefix, config.getApiKey()) : null;
+        this.storage = directory != null ? createStorage(directory) : null;
+        this.codec = new LaudspeakerEventCodec(config.getSerializer());
+        this.sealedDir = storagePrefix != null ? new File(new File(storagePrefix, config.getApiKey()), "sealed") : null;
+        this.journal = directory != null ? new LaudspeakerBatchJournal(new File(directory, "batches.journal"), config.getDurability()) : null;
+        this.staging = new LaudspeakerStagingBuffer<>(config.getStagingCapacity());
+    }
+
+    private static ExecutorService newUploadExecutor(int threads) {
+        // Idle upload threads exit, so a queue that is not flushing holds none
+        ThreadPoolExecutor uploadExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new LaudspeakerThreadFactory("LaudspeakerUploadThread"));
+        uploadExecutor.allowCoreThreadTimeOut(true);
+        return uploadExecutor;
     }
 
+    private LaudspeakerQueueStorage createStorage(File dir) {
+        switch (config.getQueueStorageType()) {
+            case MAPPED_RING:
+                return new LaudspeakerMappedRing(new File(dir, "queue.ring"), config.getRingCapacityBytes(), config.getDurability(), config.getLogger());
+            case SEGMENTED_LOG:
+            default:
+                return new LaudspeakerEventLog(dir, config.getSegmentSizeBytes(), config.getDurability(), config.getLogger());
+        }
+    }
+
+    /**
+     * Publishes the event to the staging buffer without taking any lock, the queue thread
+     * moves staged events into the storage in batches.
+     */
     public void add(LaudspeakerEvent event) {
-        executor.execute(() -> {
-            boolean removeFirst = false;
-            if (deque.size() >= config.getMaxQueueSize()) {
-                removeFirst = true;
-            }
+        if (storage == null) {
+            return;
+        }
 
-            if (removeFirst) {
-                try {
-                    File first;
-                    synchronized (dequeLock) {
-                        first = deque.removeFirst();
+        if (staging.offer(event)) {
+            scheduleDrain();
+            return;
+        }
+
+        switch (config.getOverflowPolicy()) {
+            case SUBMIT_TO_EXECUTOR:
+                executor.execute(() -> {
+                    if (!claimed) {
+                        overflowed.add(event);
+                        return;
                     }
-                    first.delete();
-                    config.getLogger().log("Queue is full, the oldest event " + first.getName() + " is dropped.");
-                } catch (NoSuchElementException ignored) {
-                }
+                    // Keep the order of what is already staged
+                    drainStaging();
+                    stage(event);
+                    commit();
+                    pump();
+                });
+                break;
+            case DROP_NEWEST:
+            default:
+                droppedEvents.incrementAndGet();
+                config.getTracer().dropped(event);
+                scheduleDrain();
+                break;
+        }
+    }
+
+    private void scheduleDrain() {
+        // Only the producer that flips the flag pays for the executor hand-off
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        int window = config.getGroupCommitWindowMillis();
+        if (window > 0 && executor instanceof ScheduledExecutorService) {
+            // Events captured within the window are written as one group
+            ((ScheduledExecutorService) executor).schedule(drainTask, window, TimeUnit.MILLISECONDS);
+        } else {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drainStaging() {
+        // Cleared before draining so an event published during the drain schedules another one
+        drainScheduled.set(false);
+        if (!claimed) {
+            // Kept staged until recover gets hold of the storage
+            return;
+        }
+
+        int dropped = droppedEvents.getAndSet(0);
+        if (dropped > 0) {
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_DROPPED, dropped);
+            if (config.getLogger().isEnabled(LaudspeakerLogLevel.WARN)) {
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Staging buffer is full, {} events were dropped.", dropped);
             }
+        }
 
+        int drained = 0;
+        LaudspeakerEvent event;
+        while (drained < staging.capacity() && (event = staging.poll()) != null) {
+            stage(event);
+            drained++;
+        }
+        while ((event = overflowed.poll()) != null) {
+            stage(event);
+            drained++;
+        }
+        if (drained > 0) {
+            commit();
+            reportDepth();
+            pump();
+        }
+    }
 
-            if (storagePrefix != null) {
-                File dir = new File(storagePrefix, config.getApiKey());
+    private void reportDepth() {
+        config.getMetrics().gauge(LaudspeakerMetric.QUEUE_DEPTH, storage.size());
+        config.getMetrics().gauge(LaudspeakerMetric.QUEUE_BYTES, storage.byteSize());
+    }
 
-                if (!dirCreated) {
-                    dir.mkdirs();
-                    dirCreated = true;
-                }
+    private boolean commit() {
+        try {
+            storage.commit();
+            return true;
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to commit queued events: {}", e);
+            return false;
+        }
+    }
 
-                File file = new File(dir, UUID.randomUUID().toString() + ".event");
-                synchronized (dequeLock) {
-                    deque.add(file);
-                }
+    private void stage(LaudspeakerEvent event) {
+        if (!claimed) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Queue storage is not open, event {} is dropped.", event.getEvent());
+            config.getTracer().dropped(event);
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            if (coalesce(event)) {
+                config.getMetrics().record(LaudspeakerMetric.ENQUEUE_LATENCY, System.nanoTime() - started);
+                config.getMetrics().increment(LaudspeakerMetric.EVENTS_COALESCED, 1);
+                config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Merged event {} into the queued {}.", event.getEventId(), event.getEvent());
+                return;
+            }
+            enqueue(event);
+            config.getMetrics().record(LaudspeakerMetric.ENQUEUE_LATENCY, System.nanoTime() - started);
+            config.getTracer().persisted(event, removedRecords + storage.size() - 1);
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_QUEUED, 1);
+            if (oldestQueuedAtMillis == 0) {
+                oldestQueuedAtMillis = System.currentTimeMillis();
+            }
+            config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Queued event {}.", event.getEventId());
+        } catch (Throwable e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Event {} failed to parse: {}.", event.getEvent(), e);
+            config.getTracer().dropped(event);
+        }
+    }
 
+    private void enqueue(LaudspeakerEvent event) throws IOException {
+        if (storage.size() >= config.getMaxQueueSize()) {
+            evictOldest();
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_DROPPED, 1);
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Queue is full, the oldest event is dropped.");
+        }
 
-                try {
-                    OutputStream os = new FileOutputStream(file);
+        while (!storage.append(dictionary -> codec.encode(event, dictionary))) {
+            evictOldest();
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_DROPPED, 1);
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Queue storage is full, the oldest event is dropped.");
+        }
+        lastUpdate = config.getCoalesceUpdates() && isUpdate(event) ? event : null;
 
-                    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os))) {
-                        config.getSerializer().toJson(event, writer);
-                        writer.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    config.getLogger().log("Queued event " + file.getName() + ".");
-                    flushIfOverThreshold();
-                } catch (Throwable e) {
-                    config.getLogger().log("Event " + event.getEvent() + " failed to parse: " + e + ".");
-                }
+        evictOverBytes();
+    }
+
+    private void evictOverBytes() throws IOException {
+        int evicted = 0;
+        while (storage.byteSize() > config.getMaxQueueBytes() && storage.size() > 1) {
+            evictOldest();
+            evicted++;
+        }
+        if (evicted > 0) {
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_DROPPED, evicted);
+            if (config.getLogger().isEnabled(LaudspeakerLogLevel.WARN)) {
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Queue is over {} bytes, {} oldest events are dropped.", config.getMaxQueueBytes(), evicted);
             }
-        });
+        }
     }
 
-    private void flushIfOverThreshold() {
-        if (isAboveThreshold(config.getFlushAt())) {
-            flushBatch();
+    /**
+     * Merges a $set into the $set queued right before it for the same customer, later values win
+     * per key. $identify events merge the same way when they identify the same distinct_id. Only an
+     * unsealed tail record is rewritten, so nothing sealed into a batch changes under it.
+     *
+     * @return false if the event has to be queued on its own.
+     */
+    private boolean coalesce(LaudspeakerEvent event) throws IOException {
+        LaudspeakerEvent previous = lastUpdate;
+        if (previous == null || !config.getCoalesceUpdates() || storage.size() <= sealedRecords
+                || !Objects.equals(previous.getEvent(), event.getEvent()) || !Objects.equals(previous.getId(), event.getId())) {
+            return false;
         }
+        Map<String, Object> previousPayload = previous.getPayload();
+        Map<String, Object> payload = event.getPayload();
+        if (IDENTIFY.equals(event.getEvent()) && !Objects.equals(valueOf(previousPayload, DISTINCT_ID), valueOf(payload, DISTINCT_ID))) {
+            return false;
+        }
+
+        Map<String, Object> merged = new LinkedHashMap<>();
+        if (previousPayload != null) {
+            merged.putAll(previousPayload);
+        }
+        if (payload != null) {
+            merged.putAll(payload);
+        }
+        // Keeps the ID and time of the latest update, the one it replaces counts as removed
+        LaudspeakerEvent coalesced = new LaudspeakerEvent(event.getEvent(), event.getId(), merged, event.getTimestampMillis(), event.getEventId());
+        if (!storage.replaceLast(dictionary -> codec.encode(coalesced, dictionary))) {
+            return false;
+        }
+        lastUpdate = coalesced;
+        long position = removedRecords + storage.size() - 1;
+        config.getTracer().removed(position, position + 1);
+        config.getTracer().persisted(event, position);
+        evictOverBytes();
+        return true;
+    }
+
+    private static boolean isUpdate(LaudspeakerEvent event) {
+        return SET.equals(event.getEvent()) || IDENTIFY.equals(event.getEvent());
+    }
+
+    private static Object valueOf(Map<String, Object> payload, String key) {
+        return payload != null ? payload.get(key) : null;
+    }
+
+    private LaudspeakerEvent deserialize(byte[] record) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(record), StandardCharsets.UTF_8)) {
+            return config.getSerializer().fromJson(reader, LaudspeakerEvent.class);
+        }
+    }
+
+    /**
+     * Asks the flush policy about the events not uploading yet, a flushAt set on the config still
+     * flushes at that many events.
+     */
+    private boolean shouldFlush() {
+        int total = size();
+        int queued = total - awaitingRecords;
+        if (queued <= 0) {
+            return false;
+        }
+        if (config.getFlushAt() > 0 && queued >= config.getFlushAt()) {
+            return true;
+        }
+        // Records do not all have the same size, but the share of the stored bytes is close enough
+        long queuedBytes = queued == total ? storage.byteSize() : storage.byteSize() / total * queued;
+        long oldest = oldestQueuedAtMillis;
+        long age = oldest > 0 ? Math.max(0, System.currentTimeMillis() - oldest) : 0;
+        return config.getFlushPolicy().shouldFlush(queued, queuedBytes, age, config.getMaxBatchSize());
+    }
+
+    private int batchSize() {
+        return config.getFlushPolicy().batchSize(config.getMaxBatchSize());
     }
 
     private boolean isAboveThreshold(int flushAt) {
-        return deque.size() >= flushAt;
+        return size() >= flushAt;
     }
 
 
     private boolean canFlushBatch() {
-        synchronized (config) {
-            if (pausedUntil != null && pausedUntil.after(config.getDateProvider().currentDate())) {
-                config.getLogger().log("Queue is paused until " + pausedUntil);
-                return false;
-            }
+        if (isPaused(config.getDateProvider().nanoTime())) {
+            config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Queue is paused for a retry.");
+            return false;
         }
         return true;
     }
 
-    private List<File> takeFiles() {
-        List<File> events = new ArrayList<>();
-        synchronized (dequeLock) {
-            int count = 0;
-            while (!deque.isEmpty() && count < config.getMaxBatchSize()) {
-                events.add(deque.removeFirst());
-                count++;
+    private boolean isPaused(long nowNanos) {
+        return paused && pausedUntilNanos - nowNanos > 0;
+    }
+
+    /**
+     * Serializes the events following the already sealed ones into an upload-ready batch file.
+     * Runs on the queue executor, returns null if there are no such events. A batch of records that
+     * all failed to parse has no events and no file. Throws if the batch file cannot be put in place,
+     * the events then stay queued and unsealed.
+     * Package-private for the benchmark module.
+     */
+    LaudspeakerSealedBatch sealBatch() throws IOException {
+        return sealBatch(batchSize(), config.getMaxBatchBytes(), -1, null);
+    }
+
+    /**
+     * Seals up to maxRecords records, a batch restored from the journal passes its own sequence
+     * and idempotency key, -1 and null take the next sequence and a new key.
+     */
+    private LaudspeakerSealedBatch sealBatch(int maxRecords, long maxBatchBytes, long sequence, UUID idempotencyKey) throws IOException {
+        // Records are smaller than their JSON, so the stored bytes only bound what is worth reading
+        List<LaudspeakerQueueRecord> records = storage.peek(sealedRecords, maxRecords, maxBatchBytes);
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        if (!sealedDir.exists()) {
+            sealedDir.mkdirs();
+        }
+        File file = new File(sealedDir, "sealing.json");
+        String fcmToken = api.snapshot().getFcmToken();
+        int eventCount = 0;
+        int recordCount = 0;
+        // Opening and closing brackets, the sent_at suffix is left out
+        long batchBytes = BATCH_PREFIX.length() + 1;
+        // Each event is converted into a scratch buffer first so a corrupted record never leaves half an object in the file
+        EventBuffer eventBuffer = new EventBuffer();
+        JsonWriter eventWriter = newJsonWriter(eventBuffer);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(BATCH_PREFIX);
+            for (LaudspeakerQueueRecord record : records) {
+                recordCount++;
+                eventBuffer.reset();
+                try {
+                    if (LaudspeakerEventCodec.isBinary(record.getData())) {
+                        codec.writeJson(record.getData(), record.getDictionary(), eventWriter, fcmToken);
+                    } else {
+                        LaudspeakerEvent event = deserialize(record.getData());
+                        if (event == null) {
+                            continue;
+                        }
+                        event.setFCMToken(fcmToken);
+                        event.setSource(LaudspeakerEvent.sourceOf(event.getEvent()));
+                        config.getSerializer().getAdapter(LaudspeakerEvent.class).write(eventWriter, event);
+                    }
+                    eventWriter.flush();
+                } catch (Exception e) {
+                    // The record is consumed together with the rest of the batch
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to parse record, Error: {}", e.getMessage());
+                    eventWriter = newJsonWriter(eventBuffer);
+                    continue;
+                }
+                int eventBytes = eventBuffer.utf8Length() + (eventCount > 0 ? 1 : 0);
+                if (eventCount > 0 && batchBytes + eventBytes > maxBatchBytes) {
+                    // Left for the next batch, a single event over the budget still goes alone
+                    recordCount--;
+                    break;
+                }
+                if (eventCount > 0) {
+                    writer.write(',');
+                }
+                eventBuffer.writeTo(writer);
+                batchBytes += eventBytes;
+                eventCount++;
             }
+            writer.write(']');
+        }
+
+        if (eventCount == 0) {
+            file.delete();
+            return new LaudspeakerSealedBatch(file, recordCount, 0, -1, null, null, null);
+        }
+        if (sequence < 0) {
+            sequence = nextSequence();
+        }
+        if (idempotencyKey == null) {
+            idempotencyKey = LaudspeakerUuidV7.next();
         }
-        return events;
+        UUID firstEventId = eventIdOf(records.get(0));
+        UUID lastEventId = eventIdOf(records.get(recordCount - 1));
+        // Named after the sequence so several sealed batches can sit side by side
+        File sealed = new File(sealedDir, "batch-" + sequence + ".json");
+        if (!file.renameTo(sealed)) {
+            // The next seal writes the temporary file again, so it never goes out as a batch. The records stay queued
+            file.delete();
+            throw new IOException("Cannot rename " + file + " to " + sealed.getName());
+        }
+        if (config.getLogger().isEnabled(LaudspeakerLogLevel.DEBUG)) {
+            config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Sealed batch {} of {} events.", sequence, eventCount);
+        }
+        return new LaudspeakerSealedBatch(sealed, recordCount, eventCount, sequence, idempotencyKey, firstEventId, lastEventId);
     }
 
-    private void flushBatch() {
-        if (!canFlushBatch()) {
-            config.getLogger().log("Cannot flush the Queue.");
+    private UUID eventIdOf(LaudspeakerQueueRecord record) {
+        try {
+            if (LaudspeakerEventCodec.isBinary(record.getData())) {
+                return LaudspeakerEventCodec.readEventId(record.getData());
+            }
+            LaudspeakerEvent event = deserialize(record.getData());
+            return event != null ? event.getEventId() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private UUID eventIdAt(int offset) throws IOException {
+        List<LaudspeakerQueueRecord> records = storage.peek(offset, 1, Long.MAX_VALUE);
+        return records.isEmpty() ? null : eventIdOf(records.get(0));
+    }
+
+    /**
+     * Per-installation batch counter, kept in the preferences so the server can order batches that
+     * arrive out of order, also across restarts. Reset keeps it.
+     */
+    private long nextSequence() {
+        LaudspeakerPreferences preferences = config.getCachePreferences();
+        if (nextSequence < 0) {
+            try {
+                nextSequence = Long.parseLong((String) preferences.getValue(LaudspeakerPreferences.BATCH_SEQUENCE, "0"));
+            } catch (NumberFormatException e) {
+                nextSequence = 0;
+            }
+        }
+        long sequence = nextSequence++;
+        preferences.setValue(LaudspeakerPreferences.BATCH_SEQUENCE, nextSequence);
+        return sequence;
+    }
+
+    private PendingBatch sealNext() throws IOException {
+        if (size() <= sealedRecords) {
+            return null;
+        }
+        LaudspeakerSealedBatch batch = sealBatch();
+        if (batch == null) {
+            return null;
+        }
+        PendingBatch pending = new PendingBatch(batch, removedRecords + sealedRecords);
+        if (batch.getEventCount() > 0 && batch.getFirstEventId() != null && batch.getLastEventId() != null) {
+            pending.journalEntry = new LaudspeakerBatchJournal.Entry(batch.getSequence(), batch.getIdempotencyKey(), batch.getRecordCount(), batch.getFirstEventId(), batch.getLastEventId());
+            try {
+                journal.sealed(pending.journalEntry);
+            } catch (IOException e) {
+                // Still sent, a restart seals its records again under a new key
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to journal batch {}: {}", batch.getSequence(), e);
+                pending.journalEntry = null;
+            }
+        }
+        sealedBatches.addLast(pending);
+        sealedRecords += pending.records;
+        return pending;
+    }
+
+    /**
+     * Seals a full batch ahead of time while the queue cannot flush, so the next flush only streams bytes.
+     */
+    private void sealIfIdle() {
+        if (storage == null || nextUnsentBatch() != null || size() - sealedRecords < batchSize()) {
             return;
         }
+        try {
+            sealNext();
+        } catch (Exception e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Sealing failed: {}", e.getMessage());
+        }
+    }
 
-        if (isFlushing.getAndSet(true)) {
-            config.getLogger().log("Queue is flushing.");
+    private PendingBatch nextUnsentBatch() {
+        for (PendingBatch pending : sealedBatches) {
+            if (!pending.inFlight && !pending.acknowledged) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the record at the head of the storage. A batch sealed over it keeps its file and is
+     * uploaded as it is, once acknowledged it only removes the records still under it, so nothing
+     * that stays queued is sent twice.
+     */
+    private void evictOldest() throws IOException {
+        storage.remove(1);
+        config.getTracer().removed(removedRecords, removedRecords + 1);
+        removedRecords++;
+        PendingBatch head = sealedBatches.peekFirst();
+        if (head == null) {
             return;
         }
+        head.records--;
+        sealedRecords--;
+        if (head.inFlight || head.acknowledged) {
+            awaitingRecords--;
+        }
+        if (head.records == 0) {
+            sealedBatches.pollFirst();
+            head.discarded = true;
+            if (!head.inFlight) {
+                head.batch.delete();
+            }
+        }
+    }
 
+    private void discardSealedBatches() {
+        // Uploads still running finish on their own, the records they carry are sealed again
+        for (PendingBatch pending : sealedBatches) {
+            pending.discarded = true;
+            if (!pending.inFlight) {
+                pending.batch.delete();
+            }
+        }
+        sealedBatches.clear();
+        sealedRecords = 0;
+        awaitingRecords = 0;
+    }
+
+    /**
+     * Keeps up to maxInFlightBatches uploads running while a flush is draining the queue or the
+     * flush policy asks for one. Runs on the executor, and again whenever an upload completes.
+     */
+    private void pump() {
+        if (!running) {
+            // Uploads still completing after stop must not seal from the closed storage
+            return;
+        }
+        // Direct executors complete uploads inside startUploads, loop instead of recursing
+        if (pumping) {
+            pumpAgain = true;
+            return;
+        }
+        pumping = true;
         try {
-            executeBatch();
+            do {
+                pumpAgain = false;
+                startUploads();
+            } while (pumpAgain);
+            scheduleWakeup();
+            notifyDrained();
         } finally {
-            isFlushing.set(false);
+            pumping = false;
         }
     }
 
-    private void executeBatch() {
-        if (!isConnected()) {
-            isFlushing.set(false);
+    /**
+     * Arms a single wakeup a flush interval ahead while there are events waiting to be sent, or at
+     * the end of the backoff while the queue is paused. An armed wakeup is kept, so bursts of events
+     * do not schedule anything new. Timed flushes need a ScheduledExecutorService.
+     */
+    private void scheduleWakeup() {
+        if (!running || !(executor instanceof ScheduledExecutorService)) {
+            return;
+        }
+        LaudspeakerNetworkStatus networkStatus = config.getNetworkStatus();
+        if (size() - awaitingRecords <= 0 || (networkStatus != null && !networkStatus.isConnected())) {
+            // Nothing to send or no way to send it, the next staged event or the network coming back arms it again
+            cancelWakeup();
             return;
         }
 
-        boolean retry = false;
-        try {
-            batchEvents();
-            retryCount = 0;
-        } catch (Exception e) {
-            config.getLogger().log("Flushing failed: " + e.getMessage());
-            retry = true;
-            retryCount++;
-        } finally {
-            calculateDelay(retry);
-            isFlushing.set(false);
+        long now = config.getDateProvider().nanoTime();
+        long wakeAt = now + TimeUnit.MILLISECONDS.toNanos(getDelay());
+        boolean backingOff = isPaused(now);
+        if (backingOff) {
+            wakeAt = pausedUntilNanos;
         }
+        if (wakeup != null && (!backingOff || wakeupAtNanos - wakeAt >= 0)) {
+            return;
+        }
+        cancelWakeup();
+        wakeupAtNanos = wakeAt;
+        wakeup = ((ScheduledExecutorService) executor).schedule(wakeupTask, wakeAt - now, TimeUnit.NANOSECONDS);
     }
 
+    private void cancelWakeup() {
+        if (wakeup != null) {
+            wakeup.cancel(false);
+            wakeup = null;
+        }
+    }
 
-    private void batchEvents() throws LaudspeakerApiError, IOException {
-        List<File> files = takeFiles();
-        List<LaudspeakerEvent> events = new ArrayList<>();
-        for (File file : files) {
-            try (FileReader fileReader = new FileReader(file)) {
-                LaudspeakerEvent event = config.getSerializer().fromJson(fileReader, LaudspeakerEvent.class);
-                if (event != null) {
-                    event.setFCMToken((String) config.getCachePreferences().getValue(LaudspeakerPreferences.FCM_TOKEN, null));
-                    if (Objects.equals(event.getEvent(), "$delivered") || Objects.equals(event.getEvent(), "$opened")) {
-                        event.setSource("message");
-                    } else {
-                        event.setSource("mobile");
-                    }
-                    events.add(event);
+    private void onWakeup() {
+        wakeup = null;
+        if (!running) {
+            return;
+        }
+        if (!canFlushBatch()) {
+            scheduleWakeup();
+            return;
+        }
+        if (shouldFlush()) {
+            draining = true;
+        }
+        pump();
+    }
+
+    private void startUploads() {
+        if (storage == null || !running) {
+            return;
+        }
+        while (inFlight.get() < config.getMaxInFlightBatches()) {
+            if (!draining && !shouldFlush()) {
+                return;
+            }
+            if (!draining && !canFlushBatch()) {
+                config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Cannot flush the Queue.");
+                sealIfIdle();
+                return;
+            }
+            if (!isConnected()) {
+                draining = false;
+                sealIfIdle();
+                requestBackgroundDrain();
+                return;
+            }
+
+            PendingBatch pending;
+            try {
+                pending = nextUnsentBatch();
+                if (pending == null) {
+                    pending = sealNext();
                 }
             } catch (Exception e) {
-                config.getLogger().log("Failed to add event: " + e.getMessage());
-                synchronized (dequeLock) {
-                    deque.remove(file);
-                }
-                boolean deleted = file.delete();
-                if (!deleted) {
-                    config.getLogger().log("Failed to delete file: " + file.getName());
-                }
-                config.getLogger().log("Failed to parse file: " + file.getName() + ", Error: " + e.getMessage());
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Sealing failed: {}", e.getMessage());
+                draining = false;
+                return;
+            }
+            if (pending == null) {
+                // Everything queued is sealed and uploading
+                draining = false;
+                return;
             }
+            if (pending.batch.getEventCount() == 0) {
+                pending.acknowledged = true;
+                awaitingRecords += pending.records;
+                removeAcknowledged();
+                continue;
+            }
+            upload(pending);
         }
+    }
 
-        boolean deleteFiles = true;
-        if (!events.isEmpty()) {
+    private void upload(PendingBatch pending) {
+        LaudspeakerSealedBatch batch = pending.batch;
+        pending.inFlight = true;
+        if (pending.queuedAtMillis == 0) {
+            pending.queuedAtMillis = oldestQueuedAtMillis != 0 ? oldestQueuedAtMillis : System.currentTimeMillis();
+        }
+        awaitingRecords += pending.records;
+        if (awaitingRecords >= size()) {
+            // The age counts again from the next staged event
+            oldestQueuedAtMillis = 0;
+        }
+        config.getMetrics().gauge(LaudspeakerMetric.BATCHES_IN_FLIGHT, inFlight.incrementAndGet());
+        config.getTracer().sent(pending.position, pending.position + batch.getRecordCount());
+        uploadExecutor.execute(() -> {
+            long started = System.nanoTime();
+            Exception error = null;
             try {
-                api.send(events);
-            } catch (LaudspeakerApiError e) {
-                if (e.getStatusCode() < 400) {
-                    deleteFiles = false;
-                }
-                throw e;
-            } catch (IOException e) {
-                deleteFiles = false;
-                throw e;
-            } finally {
-                if (deleteFiles) {
-                    synchronized (dequeLock) {
-                        deque.removeAll(files);
-                    }
-                    files.forEach(file -> {
-                        file.delete();
-                    });
-                }
+                // Retries stream the same sealed bytes and sequence again
+                api.send(batch);
+            } catch (Exception e) {
+                error = e;
+            }
+            config.getMetrics().record(LaudspeakerMetric.FLUSH_LATENCY, System.nanoTime() - started);
+            long roundTripMillis = elapsedMillis(started);
+            Exception failure = error;
+            executor.execute(() -> onUploaded(pending, failure, roundTripMillis));
+        });
+    }
+
+    /**
+     * Acknowledgements arrive in any order, the records of a batch leave the storage once every
+     * batch sealed before it is acknowledged as well.
+     */
+    private void onUploaded(PendingBatch pending, Exception error, long roundTripMillis) {
+        config.getMetrics().gauge(LaudspeakerMetric.BATCHES_IN_FLIGHT, inFlight.decrementAndGet());
+        pending.inFlight = false;
+        LaudspeakerSealedBatch batch = pending.batch;
+        // Network failures and non-client errors keep the batch, anything else drops it
+        boolean keep = error instanceof IOException || (error instanceof LaudspeakerApiError && ((LaudspeakerApiError) error).getStatusCode() < 400);
+
+        if (error == null) {
+            journalAcked(pending);
+            config.getFlushPolicy().onBatchSent(batch.getEventCount(), batch.getByteCount(), roundTripMillis);
+            config.getMetrics().increment(LaudspeakerMetric.BATCHES_SENT, 1);
+            config.getMetrics().increment(LaudspeakerMetric.EVENTS_SENT, batch.getEventCount());
+            config.getMetrics().record(LaudspeakerMetric.BATCH_EVENTS, batch.getEventCount());
+            config.getMetrics().record(LaudspeakerMetric.BATCH_BYTES, batch.getByteCount());
+            retryCount = 0;
+        } else {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Flushing batch {} failed: {}", batch.getSequence(), error.getMessage());
+            config.getMetrics().increment(LaudspeakerMetric.BATCHES_FAILED, 1);
+            if (keep) {
+                config.getFlushPolicy().onBatchFailed(batch.getEventCount(), batch.getByteCount());
+                config.getMetrics().increment(LaudspeakerMetric.BATCH_RETRIES, 1);
+            }
+            retryCount++;
+            calculateDelay(true);
+            draining = false;
+        }
+
+        if (pending.discarded) {
+            batch.delete();
+        } else if (keep) {
+            awaitingRecords -= pending.records;
+            // Waiting to be sent again, with the age it had
+            long oldest = oldestQueuedAtMillis;
+            if (oldest == 0 || pending.queuedAtMillis < oldest) {
+                oldestQueuedAtMillis = pending.queuedAtMillis;
             }
+            requestBackgroundDrain();
+        } else {
+            if (error == null) {
+                config.getTracer().acked(pending.position, pending.position + batch.getRecordCount());
+            }
+            pending.acknowledged = true;
+            removeAcknowledged();
+        }
+        pump();
+    }
+
+    /**
+     * Written before the records leave the storage, a restart in between removes them without sending them again.
+     */
+    private void journalAcked(PendingBatch pending) {
+        if (pending.journalEntry == null) {
+            return;
+        }
+        pending.journalEntry.acknowledged = true;
+        try {
+            journal.acked(pending.journalEntry.sequence);
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to journal the acknowledgement of batch {}: {}", pending.journalEntry.sequence, e);
+        }
+    }
+
+    private void compactJournal() {
+        if (sealedBatches.isEmpty()) {
+            journal.clear();
+            return;
+        }
+        if (journal.length() <= MAX_JOURNAL_BYTES) {
+            return;
+        }
+        List<LaudspeakerBatchJournal.Entry> entries = new ArrayList<>();
+        for (PendingBatch pending : sealedBatches) {
+            if (pending.journalEntry != null) {
+                entries.add(pending.journalEntry);
+            }
+        }
+        try {
+            journal.rewrite(entries);
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to compact the batch journal: {}", e);
+        }
+    }
+
+    private void removeAcknowledged() {
+        boolean removed = false;
+        try {
+            while (!sealedBatches.isEmpty() && sealedBatches.peekFirst().acknowledged) {
+                PendingBatch pending = sealedBatches.pollFirst();
+                int records = pending.records;
+                pending.batch.delete();
+                storage.remove(records);
+                config.getTracer().removed(removedRecords, removedRecords + records);
+                removedRecords += records;
+                sealedRecords -= records;
+                awaitingRecords -= records;
+                removed = true;
+            }
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to remove sent events: {}", e);
+        }
+        if (removed) {
+            // Syncs the read cursor, so sent events do not come back after a power loss
+            commit();
+        }
+        compactJournal();
+        reportDepth();
+        if (size() == 0) {
+            oldestQueuedAtMillis = 0;
+            cancelBackgroundDrain();
         }
     }
 
@@ -233,41 +886,76 @@ public class LaudspeakerQueue {
             return;
         }
 
-        if (isFlushing.getAndSet(true)) {
-            config.getLogger().log("Queue is flushing.");
+        executor.execute(() -> {
+            draining = true;
+            pump();
+        });
+    }
+
+    /**
+     * Uploads everything queued like flush does, then tells the listener on the executor how many
+     * events are still queued, for instance because the network went away or an upload failed.
+     * If another queue in this process holds the storage nothing is uploaded and the listener is
+     * told the storage was not claimed.
+     */
+    public void drain(DrainListener listener) {
+        executor.execute(() -> {
+            if (storage == null) {
+                listener.onDrained(true, 0);
+                return;
+            }
+            if (!claimed) {
+                listener.onDrained(false, 0);
+                return;
+            }
+            drainListener = listener;
+            draining = true;
+            pump();
+        });
+    }
+
+    private void notifyDrained() {
+        DrainListener listener = drainListener;
+        if (listener == null || draining || inFlight.get() > 0) {
             return;
         }
+        drainListener = null;
+        listener.onDrained(true, size());
+    }
 
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                if (!isConnected()) {
-                    isFlushing.set(false);
-                    return;
-                }
+    /**
+     * Asks the drain scheduler, if any, to upload what is left once the app is gone. Called when
+     * events cannot be sent right now, the request is dropped again once the queue is empty.
+     */
+    private void requestBackgroundDrain() {
+        LaudspeakerDrainScheduler scheduler = config.getDrainScheduler();
+        if (scheduler == null || backgroundDrainRequested || size() == 0) {
+            return;
+        }
+        backgroundDrainRequested = true;
+        scheduler.schedule();
+    }
 
-                boolean retry = false;
-                try {
-                    while (!deque.isEmpty()) {
-                        batchEvents();
-                    }
-                    retryCount = 0;
-                } catch (Throwable e) {
-                    config.getLogger().log("Flushing failed: " + e.getMessage());
-                    retry = true;
-                    retryCount++;
-                } finally {
-                    calculateDelay(retry);
-                    isFlushing.set(false);
-                }
-            }
-        });
+    private void cancelBackgroundDrain() {
+        LaudspeakerDrainScheduler scheduler = config.getDrainScheduler();
+        if (scheduler == null || !backgroundDrainRequested) {
+            return;
+        }
+        backgroundDrainRequested = false;
+        scheduler.cancel();
+    }
+
+    /**
+     * Whether a queue in this process holds the storage in the directory.
+     */
+    public static boolean isStorageOpen(File directory) {
+        return OPEN_DIRECTORIES.contains(directory.getAbsolutePath());
     }
 
     private boolean isConnected() {
         LaudspeakerNetworkStatus networkStatus = config.getNetworkStatus();
         if (networkStatus != null && !networkStatus.isConnected()) {
-            config.getLogger().log("Network isn't connected.");
+            config.getLogger().log(LaudspeakerLogLevel.DEBUG, "Network isn't connected.");
             return false;
         }
         return true;
@@ -276,39 +964,70 @@ public class LaudspeakerQueue {
     private void calculateDelay(boolean retry) {
         if (retry) {
             int delay = Math.min(retryCount * retryDelaySeconds, maxRetryDelaySeconds);
-            pausedUntil = config.getDateProvider().addSecondsToCurrentDate(delay);
+            pausedUntilNanos = config.getDateProvider().nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+            paused = true;
         }
     }
 
-    public void start() {
-        synchronized (timerLock) {
-            stopTimer();
-            timer = new Timer(true);
-
-            timerTask = new TimerTask() {
-                @Override
-                public void run() {
-                    if (isFlushing.get()) {
-                        config.getLogger().log("Queue is flushing.");
-                        return;
-                    }
-                    flush();
-                }
-            };
-
-            timer.schedule(this.timerTask, this.getDelay(), this.getDelay());
-        }
+    private void onNetworkChanged(LaudspeakerNetworkState state) {
+        executor.execute(() -> {
+            if (!running) {
+                return;
+            }
+            if (!state.isConnected()) {
+                cancelWakeup();
+                return;
+            }
+            config.getLogger().log(LaudspeakerLogLevel.INFO, "Network is back on {}.", state);
+            // The backoff was for the network that went away
+            paused = false;
+            retryCount = 0;
+            if (size() - awaitingRecords > 0) {
+                draining = true;
+            } else if (config.getPrewarmConnection()) {
+                // Nothing to send yet, have the connection ready for the next flush
+                api.prewarm();
+            }
+            pump();
+        });
     }
 
-    private void stopTimer() {
-        if (timerTask != null) timerTask.cancel();
-        if (timer != null) timer.cancel();
-        ;
+    public void start() {
+        running = true;
+        LaudspeakerNetworkStatus networkStatus = config.getNetworkStatus();
+        if (networkStatus != null) {
+            networkStatus.addListener(networkListener);
+        }
+        if (storage != null) {
+            // Runs on the executor, capture keeps publishing to the staging buffer meanwhile
+            executor.execute(this::recover);
+        }
     }
 
     public void stop() {
-        synchronized (timerLock) {
-            stopTimer();
+        running = false;
+        LaudspeakerNetworkStatus networkStatus = config.getNetworkStatus();
+        if (networkStatus != null) {
+            networkStatus.removeListener(networkListener);
+        }
+        if (storage != null) {
+            executor.execute(() -> {
+                cancelWakeup();
+                legacyEvents = null;
+                drainStaging();
+                discardSealedBatches();
+                config.getTracer().clear();
+                if (size() > 0 && config.getDrainScheduler() != null) {
+                    // Whatever is left goes out with the drain job, even if one was requested before
+                    backgroundDrainRequested = true;
+                    config.getDrainScheduler().schedule();
+                }
+                storage.close();
+                if (claimed) {
+                    OPEN_DIRECTORIES.remove(directory.getAbsolutePath());
+                    claimed = false;
+                }
+            });
         }
     }
 
@@ -316,21 +1035,296 @@ public class LaudspeakerQueue {
         executor.execute(new Runnable() {
             @Override
             public void run() {
-                List<File> tempFiles;
-                synchronized (dequeLock) {
-                    tempFiles = new ArrayList<>(deque);
-                    deque.clear();
-                }
-                for (File file : tempFiles) {
-                    file.delete();
+                if (storage != null) {
+                    staging.drain(event -> {
+                    }, Integer.MAX_VALUE);
+                    overflowed.clear();
+                    if (!claimed) {
+                        return;
+                    }
+                    discardSealedBatches();
+                    removedRecords += size();
+                    storage.clear();
+                    commit();
+                    journal.clear();
+                    lastUpdate = null;
+                    config.getTracer().clear();
+                    oldestQueuedAtMillis = 0;
+                    cancelBackgroundDrain();
                 }
             }
         });
     }
 
-    public List<File> getDequeList() {
-        synchronized (dequeLock) {
-            return new ArrayList<>(deque);
+    private void deleteStaleSealedBatches() {
+        // Batches sealed by a previous process are sealed again from the storage
+        File[] files = sealedDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Finds the batches journaled before a restart at the head of the storage, by the event IDs of
+     * their first and last record. Acknowledged batches still at the head are removed without being
+     * sent again, the others are sealed again with their sequence and idempotency key so the server
+     * can drop a copy it already has. An acknowledged batch behind an unacknowledged one is removed
+     * once that one is, as before the restart. Batches whose records are gone are dropped from the journal.
+     */
+    private void restoreJournaledBatches() throws IOException {
+        List<LaudspeakerBatchJournal.Entry> entries;
+        try {
+            entries = journal.read();
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Batch journal is corrupted, queued events are sealed again: {}", e);
+            journal.clear();
+            return;
+        }
+
+        int skipped = 0;
+        int restored = 0;
+        for (LaudspeakerBatchJournal.Entry entry : entries) {
+            if (!isAtSealingPoint(entry)) {
+                if (sealedRecords == 0) {
+                    // Removed before the restart
+                    continue;
+                }
+                // The storage changed under the journal, whatever follows is sealed anew
+                break;
+            }
+            if (entry.acknowledged && sealedRecords == 0) {
+                storage.remove(entry.records);
+                config.getTracer().removed(removedRecords, removedRecords + entry.records);
+                removedRecords += entry.records;
+                skipped += entry.records;
+                continue;
+            }
+
+            PendingBatch pending;
+            if (entry.acknowledged) {
+                LaudspeakerSealedBatch batch = new LaudspeakerSealedBatch(new File(sealedDir, "batch-" + entry.sequence + ".json"), entry.records, 0, entry.sequence, entry.idempotencyKey, entry.firstEventId, entry.lastEventId);
+                pending = new PendingBatch(batch, removedRecords + sealedRecords);
+                pending.acknowledged = true;
+                awaitingRecords += pending.records;
+            } else {
+                LaudspeakerSealedBatch batch;
+                try {
+                    batch = sealBatch(entry.records, Long.MAX_VALUE, entry.sequence, entry.idempotencyKey);
+                } catch (IOException e) {
+                    config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to seal journaled batch {} again: {}", entry.sequence, e);
+                    break;
+                }
+                if (batch == null || batch.getRecordCount() != entry.records || batch.getEventCount() == 0) {
+                    if (batch != null) {
+                        batch.delete();
+                    }
+                    break;
+                }
+                pending = new PendingBatch(batch, removedRecords + sealedRecords);
+            }
+            pending.journalEntry = entry;
+            sealedBatches.addLast(pending);
+            sealedRecords += pending.records;
+            restored++;
+        }
+
+        if (skipped > 0 || restored > 0) {
+            config.getLogger().log(LaudspeakerLogLevel.INFO, "Batch journal: {} acknowledged events removed, {} batches restored.", skipped, restored);
+        }
+        List<LaudspeakerBatchJournal.Entry> live = new ArrayList<>();
+        for (PendingBatch pending : sealedBatches) {
+            live.add(pending.journalEntry);
+        }
+        try {
+            journal.rewrite(live);
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to compact the batch journal: {}", e);
+        }
+    }
+
+    private boolean isAtSealingPoint(LaudspeakerBatchJournal.Entry entry) throws IOException {
+        int first = sealedRecords;
+        int last = sealedRecords + entry.records - 1;
+        return entry.records > 0 && last < size()
+                && entry.firstEventId.equals(eventIdAt(first)) && entry.lastEventId.equals(eventIdAt(last));
+    }
+
+    private void recover() {
+        if (!running) {
+            return;
+        }
+        if (!OPEN_DIRECTORIES.add(directory.getAbsolutePath())) {
+            // A drain job is uploading from the same storage, it lets go once it is done
+            config.getLogger().log(LaudspeakerLogLevel.INFO, "Queue storage is in use, retrying in a second.");
+            if (executor instanceof ScheduledExecutorService) {
+                ((ScheduledExecutorService) executor).schedule(this::recover, 1, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        claimed = true;
+        lastUpdate = null;
+
+        long started = System.nanoTime();
+        try {
+            storage.open();
+            deleteStaleSealedBatches();
+            restoreJournaledBatches();
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.ERROR, "Failed to open the queue storage: {}", e);
+        }
+        config.getLogger().log(LaudspeakerLogLevel.INFO, "Recovered {} queued events in {} ms.", size(), elapsedMillis(started));
+        reportDepth();
+        if (size() > 0) {
+            // Their capture time is not known without reading them, the age counts from now
+            oldestQueuedAtMillis = System.currentTimeMillis();
         }
+
+        // Events captured while waiting for the storage
+        drainStaging();
+        scheduleWakeup();
+
+        LaudspeakerLegacyEvents legacy = new LaudspeakerLegacyEvents(new File(storagePrefix, config.getApiKey()), config.getLogger());
+        if (legacy.load()) {
+            legacyEvents = legacy;
+            importLegacyEvents(legacy, started, 0, 0);
+        }
+    }
+
+    /**
+     * Moves events left as one JSON file per event by earlier SDK versions into the storage.
+     * Imports a chunk at a time and queues the rest behind it, so staged events keep draining.
+     * Files are marked as imported and deleted only once their chunk is committed. A chunk that
+     * fails to commit is taken out of the storage again and the import stops, the next launch
+     * imports the files left.
+     */
+    private void importLegacyEvents(LaudspeakerLegacyEvents legacy, long started, int imported, int skipped) {
+        if (legacyEvents != legacy) {
+            return;
+        }
+        // Deleted only once the chunk is committed, a process dying before that imports them again
+        List<File> queuedFiles = new ArrayList<>();
+        int appended = 0;
+        for (File file : legacy.next(LEGACY_IMPORT_CHUNK)) {
+            LaudspeakerEvent event;
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                event = config.getSerializer().fromJson(reader, LaudspeakerEvent.class);
+            } catch (Exception e) {
+                event = null;
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to parse {}: {}", file.getName(), e.getMessage());
+            }
+            if (event == null) {
+                // Never importable, counted in the summary
+                skipped++;
+                file.delete();
+                continue;
+            }
+            try {
+                enqueue(event);
+                appended++;
+            } catch (IOException e) {
+                // Kept, the next launch scans the directory again
+                config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to import {}: {}", file.getName(), e.getMessage());
+                continue;
+            }
+            queuedFiles.add(file);
+            imported++;
+        }
+        if (!commit()) {
+            rollBackImport(appended);
+            legacyEvents = null;
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Stopped importing legacy event files after {} events, the rest is imported on the next launch.", imported - queuedFiles.size());
+            return;
+        }
+        try {
+            legacy.imported(queuedFiles);
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to mark legacy event files as imported: {}", e);
+        }
+        for (File file : queuedFiles) {
+            file.delete();
+        }
+        scheduleWakeup();
+
+        if (legacy.hasNext()) {
+            int importedTotal = imported;
+            int skippedTotal = skipped;
+            executor.execute(() -> importLegacyEvents(legacy, started, importedTotal, skippedTotal));
+            return;
+        }
+        legacy.finish();
+        legacyEvents = null;
+        config.getLogger().log(LaudspeakerLogLevel.INFO, "Imported {} events from legacy event files in {} ms, {} unreadable files were skipped.", imported, elapsedMillis(started), skipped);
+    }
+
+    /**
+     * Takes the records of a chunk that failed to commit out of the storage, its files are kept
+     * and imported again, so nothing is queued twice.
+     */
+    private void rollBackImport(int appended) {
+        int records = Math.min(appended, size() - sealedRecords);
+        try {
+            storage.removeLast(records);
+        } catch (IOException e) {
+            config.getLogger().log(LaudspeakerLogLevel.WARN, "Failed to roll back the legacy import: {}", e);
+        }
+        lastUpdate = null;
+        reportDepth();
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return (System.nanoTime() - startedNanos) / 1_000_000;
+    }
+
+    public int size() {
+        return storage != null ? storage.size() : 0;
+    }
+
+    @FunctionalInterface
+    public interface DrainListener {
+        /**
+         * @param claimed false if the queue could not open the storage because another queue holds it
+         */
+        void onDrained(boolean claimed, int remainingEvents);
+    }
+
+    private static final class PendingBatch {
+        final LaudspeakerSealedBatch batch;
+        // Queue position of the first record the batch was sealed from
+        final long position;
+        // Records of the batch still in the storage, eviction takes them from the head
+        int records;
+        boolean inFlight = false;
+        boolean acknowledged = false;
+        long queuedAtMillis = 0;
+        // Set once the records under the batch changed, its upload no longer removes anything
+        boolean discarded = false;
+        // Null for batches that are not journaled
+        LaudspeakerBatchJournal.Entry journalEntry = null;
+
+        PendingBatch(LaudspeakerSealedBatch batch, long position) {
+            this.batch = batch;
+            this.position = position;
+            this.records = batch.getRecordCount();
+        }
+    }
+
+    private static final class EventBuffer extends CharArrayWriter {
+        EventBuffer() {
+            super(512);
+        }
+
+        int utf8Length() {
+            return LaudspeakerJsonFormat.utf8Length(buf, 0, count);
+        }
+    }
+
+    private static JsonWriter newJsonWriter(Writer writer) {
+        // Lenient so one writer can emit a top-level value per event
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setLenient(true);
+        jsonWriter.setSerializeNulls(false);
+        return jsonWriter;
     }
-}
\ No newline at end of file
+}
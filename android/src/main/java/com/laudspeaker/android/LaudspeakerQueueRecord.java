@@ -0,0 +1,25 @@
+package com.laudspeaker.android;
+
+/**
+ * A record read from LaudspeakerQueueStorage together with the dictionary its strings refer to.
+ */
+public class LaudspeakerQueueRecord {
+    private final byte[] data;
+    private final LaudspeakerStringDictionary dictionary;
+
+    public LaudspeakerQueueRecord(byte[] data, LaudspeakerStringDictionary dictionary) {
+        this.data = data;
+        this.dictionary = dictionary;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /*
+    Null when the storage keeps no dictionary, records then only contain literal strings.
+     */
+    public LaudspeakerStringDictionary getDictionary() {
+        return dictionary;
+    }
+}
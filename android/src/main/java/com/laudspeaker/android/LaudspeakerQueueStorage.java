@@ -0,0 +1,66 @@
+package com.laudspeaker.android;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Persistent FIFO of serialized events backing the LaudspeakerQueue.
+ * Implementations are not required to be called from a single thread, but all mutations are
+ * issued from the queue executor.
+ */
+public interface LaudspeakerQueueStorage {
+    void open() throws IOException;
+
+    /**
+     * Appends a record to the tail. The encoder is given the dictionary of the location the record
+     * is written to and may be called again if the record ends up elsewhere.
+     *
+     * @return false if the storage has no room left for the record.
+     */
+    boolean append(RecordEncoder encoder) throws IOException;
+
+    /**
+     * Replaces the record at the tail with the one the encoder produces, encoded with the
+     * dictionary of the place the tail record is in. The storage may overwrite the old record or
+     * write the new one after it and skip the old one from then on.
+     *
+     * @return false if the new record does not fit where the tail record is, nothing is changed then.
+     */
+    boolean replaceLast(RecordEncoder encoder) throws IOException;
+
+    /**
+     * Writes out the records appended since the last commit as one group, syncing them to disk
+     * if the durability of the storage asks for it.
+     */
+    void commit() throws IOException;
+
+    int size();
+
+    /**
+     * @return the stored size of the queued records, length prefixes included.
+     */
+    long byteSize();
+
+    /**
+     * Returns records without consuming them, starting offset records after the head and stopping
+     * before maxRecords records or before the stored bytes would exceed maxBytes. The first record
+     * is always returned.
+     */
+    List<LaudspeakerQueueRecord> peek(int offset, int maxRecords, long maxBytes) throws IOException;
+
+    void remove(int n) throws IOException;
+
+    /**
+     * Drops the n newest records, written or not, as if they had never been appended.
+     */
+    void removeLast(int n) throws IOException;
+
+    void clear();
+
+    void close();
+
+    @FunctionalInterface
+    interface RecordEncoder {
+        byte[] encode(LaudspeakerStringDictionary dictionary) throws IOException;
+    }
+}
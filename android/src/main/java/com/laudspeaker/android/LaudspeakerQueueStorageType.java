@@ -0,0 +1,13 @@
+package com.laudspeaker.android;
+
+public enum LaudspeakerQueueStorageType {
+    /*
+    Fixed-size segment files with a persisted read cursor, see LaudspeakerEventLog.
+     */
+    SEGMENTED_LOG,
+    /*
+    Fixed-capacity memory-mapped ring file, see LaudspeakerMappedRing. Queued events are moved
+    into a ring of the new size when ringCapacityBytes changes.
+     */
+    MAPPED_RING,
+}
@@ -0,0 +1,63 @@
+package com.laudspeaker.android;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every metric in memory, indexed by the metric: a LongAdder per counter so capturing
+ * threads do not contend on one value, an atomic array of gauges and a LaudspeakerHistogram per
+ * histogram metric. Recording does not allocate.
+ */
+public class LaudspeakerRecordingMetrics implements LaudspeakerMetrics {
+    private static final LaudspeakerMetric[] METRICS = LaudspeakerMetric.values();
+
+    private final LongAdder[] counters = new LongAdder[METRICS.length];
+    private final AtomicLongArray gauges = new AtomicLongArray(METRICS.length);
+    private final LaudspeakerHistogram[] histograms = new LaudspeakerHistogram[METRICS.length];
+
+    public LaudspeakerRecordingMetrics() {
+        for (LaudspeakerMetric metric : METRICS) {
+            if (metric.getType() == LaudspeakerMetricType.COUNTER) {
+                counters[metric.ordinal()] = new LongAdder();
+            } else if (metric.getType() == LaudspeakerMetricType.HISTOGRAM) {
+                histograms[metric.ordinal()] = new LaudspeakerHistogram();
+            }
+        }
+    }
+
+    @Override
+    public void increment(LaudspeakerMetric counter, long delta) {
+        LongAdder target = counters[counter.ordinal()];
+        if (target != null) {
+            target.add(delta);
+        }
+    }
+
+    @Override
+    public void gauge(LaudspeakerMetric gauge, long value) {
+        gauges.set(gauge.ordinal(), value);
+    }
+
+    @Override
+    public void record(LaudspeakerMetric histogram, long value) {
+        LaudspeakerHistogram target = histograms[histogram.ordinal()];
+        if (target != null) {
+            target.record(value);
+        }
+    }
+
+    @Override
+    public LaudspeakerMetricsSnapshot snapshot() {
+        long[] counterValues = new long[METRICS.length];
+        long[] gaugeValues = new long[METRICS.length];
+        LaudspeakerHistogramSnapshot[] histogramValues = new LaudspeakerHistogramSnapshot[METRICS.length];
+        for (int i = 0; i < METRICS.length; i++) {
+            counterValues[i] = counters[i] != null ? counters[i].sum() : 0;
+            gaugeValues[i] = gauges.get(i);
+            if (histograms[i] != null) {
+                histogramValues[i] = histograms[i].snapshot();
+            }
+        }
+        return new LaudspeakerMetricsSnapshot(counterValues, gaugeValues, histogramValues);
+    }
+}
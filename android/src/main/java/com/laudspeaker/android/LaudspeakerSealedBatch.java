@@ -0,0 +1,77 @@
+package com.laudspeaker.android;
+
+import java.io.File;
+import java.util.UUID;
+
+/**
+ * A batch of queued events serialized once into an upload-ready file.
+ * The file holds the body of the /events/batch/ request up to, but excluding, the trailing
+ * sent_at field, so it can be streamed as is on every attempt.
+ */
+public class LaudspeakerSealedBatch {
+    private final File file;
+    private final int recordCount;
+    private final int eventCount;
+    private final long sequence;
+    private final UUID idempotencyKey;
+    private final UUID firstEventId;
+    private final UUID lastEventId;
+
+    public LaudspeakerSealedBatch(File file, int recordCount, int eventCount, long sequence, UUID idempotencyKey, UUID firstEventId, UUID lastEventId) {
+        this.file = file;
+        this.recordCount = recordCount;
+        this.eventCount = eventCount;
+        this.sequence = sequence;
+        this.idempotencyKey = idempotencyKey;
+        this.firstEventId = firstEventId;
+        this.lastEventId = lastEventId;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /*
+    Number of storage records covered by this batch, including ones that failed to parse.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /*
+    Sent with the batch so the server can restore the order of batches uploaded in parallel, -1 if none.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /*
+    Sent with every attempt of the batch, also after a restart, so the server can drop a batch it already has. Null if none.
+     */
+    public UUID getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /*
+    Event IDs of the first and last record the batch was sealed from, null if a record has none.
+     */
+    public UUID getFirstEventId() {
+        return firstEventId;
+    }
+
+    public UUID getLastEventId() {
+        return lastEventId;
+    }
+
+    public long getByteCount() {
+        return file.length();
+    }
+
+    public void delete() {
+        file.delete();
+    }
+}
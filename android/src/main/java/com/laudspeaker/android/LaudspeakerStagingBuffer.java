@@ -0,0 +1,95 @@
+package com.laudspeaker.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer, single-consumer ring buffer.
+ * Every slot carries a sequence number: a producer claims the tail with a CAS when the slot's
+ * sequence equals the tail and publishes by bumping the sequence, the consumer takes a slot once
+ * its sequence says it was published and hands it back one lap ahead. offer never blocks and
+ * fails when the ring is full, poll and drain must only be called from one thread at a time.
+ */
+public class LaudspeakerStagingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the consumer
+    private long head = 0;
+
+    public LaudspeakerStagingBuffer(int capacity) {
+        if (capacity < 2) {
+            capacity = 2;
+        }
+        // Round up to a power of two so the slot is a mask away from the position
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not released this slot yet, the ring is full
+                return false;
+            } else {
+                // Another producer claimed this position, retry with the current tail
+                position = tail.get();
+            }
+        }
+    }
+
+    public E poll() {
+        int slot = (int) (head & mask);
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.lazySet(slot, head + capacity);
+        head++;
+        return element;
+    }
+
+    /**
+     * Hands up to maxElements published elements to the consumer, returns how many were drained.
+     */
+    public int drain(Consumer<? super E> consumer, int maxElements) {
+        int drained = 0;
+        E element;
+        while (drained < maxElements && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+}
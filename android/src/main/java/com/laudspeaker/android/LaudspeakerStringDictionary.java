@@ -0,0 +1,143 @@
+package com.laudspeaker.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only table of strings referenced by id from binary event records.
+ * Entries are persisted as [int length][UTF-8 bytes] before any record that uses them is written,
+ * a dictionary without a file only lives in memory. The file stays open until the dictionary is
+ * closed or deleted.
+ */
+public class LaudspeakerStringDictionary {
+    private static final int MAX_ENTRIES = 4096;
+
+    private final File file;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private RandomAccessFile output = null;
+    private boolean loaded = false;
+    private boolean unsynced = false;
+
+    public LaudspeakerStringDictionary(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the id of the value, adding it if needed, or -1 if the dictionary is full.
+     */
+    public synchronized int intern(String value) throws IOException {
+        load();
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (strings.size() >= MAX_ENTRIES) {
+            return -1;
+        }
+
+        if (file != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            byte[] entry = new byte[4 + bytes.length];
+            entry[0] = (byte) (bytes.length >>> 24);
+            entry[1] = (byte) (bytes.length >>> 16);
+            entry[2] = (byte) (bytes.length >>> 8);
+            entry[3] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, entry, 4, bytes.length);
+            RandomAccessFile output = output();
+            output.seek(output.length());
+            output.write(entry);
+            unsynced = true;
+        }
+        id = strings.size();
+        strings.add(value);
+        ids.put(value, id);
+        return id;
+    }
+
+    public synchronized String get(int id) throws IOException {
+        load();
+        if (id < 0 || id >= strings.size()) {
+            throw new IOException("Unknown dictionary id " + id);
+        }
+        return strings.get(id);
+    }
+
+    /**
+     * Flushes entries added since the last sync to the disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (!unsynced || output == null) {
+            return;
+        }
+        output.getFD().sync();
+        unsynced = false;
+    }
+
+    /**
+     * Closes the file, a later call opens it again.
+     */
+    public synchronized void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException ignored) {
+            }
+        }
+        output = null;
+        loaded = false;
+        strings.clear();
+        ids.clear();
+        unsynced = false;
+    }
+
+    public synchronized void delete() {
+        close();
+        if (file != null && file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null || !file.exists()) {
+            return;
+        }
+        RandomAccessFile input = output();
+        byte[] table = new byte[(int) input.length()];
+        input.seek(0);
+        input.readFully(table);
+
+        int offset = 0;
+        while (offset + 4 <= table.length) {
+            int length = ((table[offset] & 0xff) << 24) | ((table[offset + 1] & 0xff) << 16) | ((table[offset + 2] & 0xff) << 8) | (table[offset + 3] & 0xff);
+            if (length < 0 || length > table.length - offset - 4) {
+                break;
+            }
+            String value = new String(table, offset + 4, length, StandardCharsets.UTF_8);
+            ids.put(value, strings.size());
+            strings.add(value);
+            offset += 4 + length;
+        }
+        if (offset < table.length) {
+            // An entry torn by a crash, no record references it. Cut it so new entries follow the last complete one
+            input.setLength(offset);
+        }
+    }
+
+    private RandomAccessFile output() throws IOException {
+        if (output == null) {
+            output = new RandomAccessFile(file, "rw");
+        }
+        return output;
+    }
+}
@@ -0,0 +1,75 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Registers the hand-written adapters for the SDK types so Gson never falls back to reflection.
+ * Dates are written as ISO-8601 in UTC, reading still accepts Gson's default date format.
+ */
+public class LaudspeakerTypeAdapterFactory implements TypeAdapterFactory {
+    private static final Gson SERIALIZER = new GsonBuilder().registerTypeAdapterFactory(new LaudspeakerTypeAdapterFactory()).create();
+
+    /**
+     * Process-wide Gson instance with the SDK adapters registered, Gson is thread safe.
+     */
+    public static Gson getSerializer() {
+        return SERIALIZER;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Date.class) {
+            return (TypeAdapter<T>) dateAdapter(gson.getDelegateAdapter(this, TypeToken.get(Date.class)));
+        }
+        if (rawType == LaudspeakerEvent.class) {
+            return (TypeAdapter<T>) new LaudspeakerEventTypeAdapter(gson);
+        }
+        if (rawType == LaudspeakerBatchEvent.class) {
+            return (TypeAdapter<T>) new LaudspeakerBatchEventTypeAdapter(gson.getAdapter(LaudspeakerEvent.class), gson.getAdapter(Date.class));
+        }
+        if (rawType == QuietHours.class) {
+            return (TypeAdapter<T>) new QuietHoursTypeAdapter();
+        }
+        return null;
+    }
+
+    private static TypeAdapter<Date> dateAdapter(TypeAdapter<Date> defaultAdapter) {
+        return new TypeAdapter<Date>() {
+            @Override
+            public void write(JsonWriter out, Date value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                } else {
+                    out.value(LaudspeakerJsonFormat.formatIsoDate(value.getTime()));
+                }
+            }
+
+            @Override
+            public Date read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.STRING) {
+                    String value = in.nextString();
+                    Long epochMillis = LaudspeakerJsonFormat.parseIsoDate(value);
+                    if (epochMillis != null) {
+                        return new Date(epochMillis);
+                    }
+                    // Gson's default format, written by earlier SDK versions
+                    return defaultAdapter.fromJsonTree(new JsonPrimitive(value));
+                }
+                return defaultAdapter.read(in);
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.laudspeaker.android;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Time-ordered UUIDs in the version 7 layout: 48 bits of Unix milliseconds, then a 12 bit counter
+ * in place of rand_a, then 62 random bits.
+ * Every thread keeps its own last milliseconds and counter, which only go up, so IDs from one
+ * thread sort in the order it generated them, also when the clock steps back. A counter that runs
+ * out within a millisecond carries into the timestamp. IDs of different threads sort by their
+ * milliseconds, within one millisecond the random bits keep them apart.
+ * The random bits come from ThreadLocalRandom, so capturing threads share no state at all, not a
+ * lock the way UUID.randomUUID does with its SecureRandom, nor a contended atomic.
+ */
+public final class LaudspeakerUuidV7 {
+    private static final int COUNTER_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    // Unix milliseconds shifted above the counter, of the last ID of each thread
+    private static final ThreadLocal<long[]> last = ThreadLocal.withInitial(() -> new long[1]);
+
+    private LaudspeakerUuidV7() {
+    }
+
+    public static UUID next() {
+        return next(System.currentTimeMillis());
+    }
+
+    public static UUID next(long timeMillis) {
+        long[] previous = last.get();
+        long stamp = Math.max(timeMillis << COUNTER_BITS, previous[0] + 1);
+        previous[0] = stamp;
+
+        long millis = stamp >>> COUNTER_BITS;
+        long counter = stamp & ((1L << COUNTER_BITS) - 1);
+        long msb = (millis << 16) | VERSION | counter;
+        long lsb = (ThreadLocalRandom.current().nextLong() & RANDOM_MASK) | VARIANT;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * @return the Unix milliseconds of a version 7 UUID, or -1 for other versions
+     */
+    public static long timestampMillis(UUID uuid) {
+        if (uuid.version() != 7) {
+            return -1;
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
@@ -0,0 +1,61 @@
+package com.laudspeaker.android;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class QuietHoursTypeAdapter extends TypeAdapter<QuietHours> {
+    @Override
+    public void write(JsonWriter out, QuietHours quietHours) throws IOException {
+        if (quietHours == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("enabled").value(quietHours.isEnabled());
+        out.name("endTime").value(quietHours.getEndTime());
+        out.name("startTime").value(quietHours.getStartTime());
+        out.name("fallbackBehavior").value(quietHours.getFallbackBehavior());
+        out.endObject();
+    }
+
+    @Override
+    public QuietHours read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        QuietHours quietHours = new QuietHours();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "enabled":
+                    quietHours.setEnabled(in.nextBoolean());
+                    break;
+                case "endTime":
+                    quietHours.setEndTime(in.nextString());
+                    break;
+                case "startTime":
+                    quietHours.setStartTime(in.nextString());
+                    break;
+                case "fallbackBehavior":
+                    quietHours.setFallbackBehavior(in.nextString());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return quietHours;
+    }
+}
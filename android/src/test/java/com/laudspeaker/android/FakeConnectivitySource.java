@@ -0,0 +1,38 @@
+package com.laudspeaker.android;
+
+/**
+ * Connectivity source the test changes by hand, reports changes on the calling thread.
+ */
+class FakeConnectivitySource implements LaudspeakerConnectivitySource {
+    static final LaudspeakerNetworkState WIFI = new LaudspeakerNetworkState(true, false, LaudspeakerNetworkTransport.WIFI);
+    static final LaudspeakerNetworkState CELLULAR = new LaudspeakerNetworkState(true, true, LaudspeakerNetworkTransport.CELLULAR);
+
+    private LaudspeakerNetworkState state;
+    private Listener listener = null;
+
+    FakeConnectivitySource(LaudspeakerNetworkState state) {
+        this.state = state;
+    }
+
+    boolean isRegistered() {
+        return listener != null;
+    }
+
+    void change(LaudspeakerNetworkState newState) {
+        state = newState;
+        if (listener != null) {
+            listener.onNetworkChanged(newState);
+        }
+    }
+
+    @Override
+    public LaudspeakerNetworkState register(Listener listener) {
+        this.listener = listener;
+        return state;
+    }
+
+    @Override
+    public void unregister() {
+        listener = null;
+    }
+}
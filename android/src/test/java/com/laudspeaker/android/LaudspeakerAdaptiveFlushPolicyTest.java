@@ -0,0 +1,42 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerAdaptiveFlushPolicyTest {
+    @Test
+    public void startsWithFullBatches() {
+        LaudspeakerAdaptiveFlushPolicy policy = new LaudspeakerAdaptiveFlushPolicy(10, 10_000, 256 * 1024, 2_000);
+        assertEquals(50, policy.batchSize(50));
+    }
+
+    @Test
+    public void largeEventsMakeSmallerBatches() {
+        LaudspeakerAdaptiveFlushPolicy policy = new LaudspeakerAdaptiveFlushPolicy(10, 10_000, 64 * 1024, 2_000);
+        // 50 events of 4 KB in a fast round trip
+        policy.onBatchSent(50, 50 * 4096, 100);
+        assertEquals(16, policy.batchSize(50));
+    }
+
+    @Test
+    public void sizeCapNeverGoesBelowTheMinimum() {
+        LaudspeakerAdaptiveFlushPolicy policy = new LaudspeakerAdaptiveFlushPolicy(10, 10_000, 1024, 2_000);
+        policy.onBatchSent(20, 20 * 4096, 100);
+        assertEquals(10, policy.batchSize(50));
+    }
+
+    @Test
+    public void slowRoundTripsShrinkTheBatch() {
+        LaudspeakerAdaptiveFlushPolicy policy = new LaudspeakerAdaptiveFlushPolicy(10, 10_000, 256 * 1024, 2_000);
+        policy.onBatchSent(50, 50 * 200, 4_000);
+        assertEquals(25, policy.batchSize(50));
+    }
+
+    @Test
+    public void failuresHalveTheBatch() {
+        LaudspeakerAdaptiveFlushPolicy policy = new LaudspeakerAdaptiveFlushPolicy(10, 10_000, 256 * 1024, 2_000);
+        policy.onBatchFailed(40, 8_000);
+        assertEquals(20, policy.batchSize(50));
+    }
+}
@@ -0,0 +1,144 @@
+package com.laudspeaker.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerApiTest {
+    private MockWebServer server;
+    private LaudspeakerConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        config = new LaudspeakerConfig("test-key");
+        LaudspeakerPreferences preferences = new LaudspeakerPreferences(new InMemoryPreferences());
+        preferences.setValue(LaudspeakerPreferences.HOST, server.url("/").toString());
+        preferences.setValue(LaudspeakerPreferences.API_KEY, "test-key");
+        config.setCachePreferences(preferences);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void apisShareOneConnection() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        LaudspeakerApi first = new LaudspeakerApi(config);
+        LaudspeakerApi second = new LaudspeakerApi(config);
+
+        first.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+        second.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void prewarmOpensTheConnectionOfTheFirstUpload() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        LaudspeakerApi api = new LaudspeakerApi(config);
+        int idle = LaudspeakerHttpClient.shared().connectionPool().idleConnectionCount();
+
+        api.prewarm();
+
+        RecordedRequest head = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(head);
+        assertEquals("HEAD", head.getMethod());
+        assertEquals("/", head.getPath());
+        // The response is closed on the dispatcher thread, the connection goes back to the pool then
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (LaudspeakerHttpClient.shared().connectionPool().idleConnectionCount() <= idle && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        api.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+        RecordedRequest upload = server.takeRequest();
+        assertEquals("POST", upload.getMethod());
+        assertEquals(1, upload.getSequenceNumber());
+    }
+
+    @Test
+    public void dictionaryBodyRejectedWithAnyBadRequestIsSentAgainUncompressed() throws Exception {
+        config.setCompression(LaudspeakerCompression.DEFLATE_DICTIONARY);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"message\":\"Invalid JSON\"}"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        LaudspeakerApi api = new LaudspeakerApi(config);
+
+        api.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+
+        RecordedRequest compressed = server.takeRequest();
+        assertEquals("deflate", compressed.getHeader("Content-Encoding"));
+        assertEquals(LaudspeakerCompressionDictionary.VERSION, compressed.getHeader("X-Laudspeaker-Dictionary"));
+        RecordedRequest plain = server.takeRequest();
+        assertNull(plain.getHeader("Content-Encoding"));
+        assertTrue(plain.getBody().readUtf8().contains("product_viewed"));
+    }
+
+    @Test
+    public void dictionaryBodyStaysOnWhenTheUncompressedBodyIsRejectedToo() throws Exception {
+        config.setCompression(LaudspeakerCompression.DEFLATE_DICTIONARY);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"message\":\"Invalid event\"}"));
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"message\":\"Invalid event\"}"));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        LaudspeakerApi api = new LaudspeakerApi(config);
+
+        try {
+            api.send(Collections.singletonList(new LaudspeakerEvent("invalid", "customer-1", new HashMap<>())));
+            fail("Expected the 400 to be thrown");
+        } catch (LaudspeakerApiError e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        api.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+
+        assertEquals("deflate", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("deflate", server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void gzipBodyRejectedForAnotherReasonIsNotSentAgain() throws Exception {
+        config.setCompression(LaudspeakerCompression.GZIP);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"message\":\"Unknown customer\"}"));
+        LaudspeakerApi api = new LaudspeakerApi(config);
+
+        try {
+            api.send(Collections.singletonList(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>())));
+            fail("Expected the 400 to be thrown");
+        } catch (LaudspeakerApiError e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void unsupportedMediaTypeTurnsCompressionOff() throws Exception {
+        config.setCompression(LaudspeakerCompression.GZIP);
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        LaudspeakerApi api = new LaudspeakerApi(config);
+
+        api.send(Collections.singletonList(new LaudspeakerEvent("first", "customer-1", new HashMap<>())));
+        api.send(Collections.singletonList(new LaudspeakerEvent("second", "customer-1", new HashMap<>())));
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+    }
+}
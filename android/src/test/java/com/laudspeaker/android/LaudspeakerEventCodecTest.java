@@ -0,0 +1,99 @@
+package com.laudspeaker.android;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerEventCodecTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LaudspeakerEventCodec codec = new LaudspeakerEventCodec(LaudspeakerTypeAdapterFactory.getSerializer());
+
+    @Test
+    public void roundTripsMapPayload() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("source", "push");
+        nested.put("campaign_id", "c-7");
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("screen", "ProductDetails");
+        payload.put("quantity", 3L);
+        payload.put("price", 19.99);
+        payload.put("in_stock", true);
+        payload.put("discount", null);
+        payload.put("tags", Arrays.asList("summer", "sale"));
+        payload.put("campaign", nested);
+        LaudspeakerEvent event = new LaudspeakerEvent("product_viewed", "customer-1", payload);
+
+        LaudspeakerStringDictionary dictionary = new LaudspeakerStringDictionary(new File(folder.getRoot(), "0000000000.dict"));
+        byte[] record = codec.encode(event, dictionary);
+        assertTrue(LaudspeakerEventCodec.isBinary(record));
+        assertEquals(event.getEventId(), LaudspeakerEventCodec.readEventId(record));
+
+        LaudspeakerEvent decoded = codec.decode(record, dictionary);
+        assertEquals("product_viewed", decoded.getEvent());
+        assertEquals("customer-1", decoded.getId());
+        assertEquals(event.getTimestampMillis(), decoded.getTimestampMillis());
+        assertEquals(event.getEventId(), decoded.getEventId());
+        assertEquals(payload, decoded.getPayload());
+        dictionary.close();
+    }
+
+    @Test
+    public void decodesWithReloadedDictionary() throws IOException {
+        File file = new File(folder.getRoot(), "0000000000.dict");
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("screen", "Home");
+        LaudspeakerEvent event = new LaudspeakerEvent("$opened", "customer-1", payload);
+        LaudspeakerStringDictionary dictionary = new LaudspeakerStringDictionary(file);
+        byte[] record = codec.encode(event, dictionary);
+        dictionary.close();
+
+        LaudspeakerStringDictionary reloaded = new LaudspeakerStringDictionary(file);
+        LaudspeakerEvent decoded = codec.decode(record, reloaded);
+        assertEquals("$opened", decoded.getEvent());
+        assertEquals(payload, decoded.getPayload());
+        reloaded.close();
+    }
+
+    @Test
+    public void propertiesEncodeLikeTheEquivalentMap() throws IOException {
+        LaudspeakerProperties properties = new LaudspeakerProperties()
+                .putLong("quantity", 3)
+                .putDouble("price", 19.99)
+                .putBoolean("in_stock", false)
+                .putString("screen", "Cart");
+        LaudspeakerEvent event = new LaudspeakerEvent("add_to_cart", "customer-1", properties);
+
+        LaudspeakerEvent decoded = codec.decode(codec.encode(event, null), null);
+        assertEquals(properties.toMap(), decoded.getPayload());
+    }
+
+    @Test
+    public void writesTheWireFormat() throws IOException {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("screen", "Home");
+        LaudspeakerEvent event = new LaudspeakerEvent("$opened", "customer-1", payload);
+        byte[] record = codec.encode(event, null);
+
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        codec.writeJson(record, null, writer, "token");
+        writer.flush();
+
+        event.setFCMToken("token");
+        event.setSource(LaudspeakerEvent.sourceOf(event.getEvent()));
+        assertEquals(LaudspeakerTypeAdapterFactory.getSerializer().toJson(event), json.toString());
+    }
+}
@@ -0,0 +1,241 @@
+package com.laudspeaker.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerEventLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LaudspeakerLogger logger = new LaudspeakerLogger(new LaudspeakerConfig("test-key"));
+
+    @Test
+    public void reopenKeepsTheByteSize() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 1024, LaudspeakerDurability.NONE, logger);
+        log.open();
+        for (int i = 0; i < 40; i++) {
+            byte[] record = ("event-" + i).getBytes(StandardCharsets.UTF_8);
+            log.append(dictionary -> record);
+        }
+        log.commit();
+        log.remove(3);
+        long expected = log.byteSize();
+
+        for (int cycle = 0; cycle < 3; cycle++) {
+            log.close();
+            log.open();
+            assertEquals(37, log.size());
+            assertEquals(expected, log.byteSize());
+        }
+        log.close();
+    }
+
+    @Test
+    public void replacingAWrittenTailSurvivesAReopen() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.BATCH, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("set-1"));
+        log.commit();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2")));
+        log.commit();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2-3")));
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2-3-4")));
+        log.commit();
+        long expected = log.byteSize();
+        log.close();
+
+        log.open();
+        assertEquals(2, log.size());
+        assertEquals(expected, log.byteSize());
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals("first", string(records.get(0)));
+        assertEquals("set-1-2-3-4", string(records.get(1)));
+        log.close();
+    }
+
+    @Test
+    public void tornReplacementKeepsTheRecordItReplaces() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.BATCH, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("set-1"));
+        log.commit();
+        long written = segment(0).length();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2")));
+        log.commit();
+        log.close();
+
+        // A crash halfway through writing the replacement
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            file.setLength(written + 6);
+        }
+
+        log.open();
+        assertEquals(2, log.size());
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals("first", string(records.get(0)));
+        assertEquals("set-1", string(records.get(1)));
+        assertEquals(written, segment(0).length());
+        log.close();
+    }
+
+    @Test
+    public void replacementOfTheHeadSurvivesARemoveAndReopen() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.NONE, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("second"));
+        log.commit();
+        log.remove(1);
+        assertTrue(log.replaceLast(dictionary -> bytes("second-2")));
+        log.append(dictionary -> bytes("third"));
+        log.commit();
+        log.close();
+
+        log.open();
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals("second-2", string(records.get(0)));
+        assertEquals("third", string(records.get(1)));
+        log.close();
+    }
+
+    @Test
+    public void removeLastCutsWrittenAndPendingRecords() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 64, LaudspeakerDurability.NONE, logger);
+        log.open();
+        for (int i = 0; i < 4; i++) {
+            byte[] record = bytes("kept-" + i);
+            log.append(dictionary -> record);
+        }
+        log.commit();
+        long kept = log.byteSize();
+        // Spans several 64 byte segments, partly written and partly pending
+        for (int i = 0; i < 10; i++) {
+            byte[] record = bytes("dropped-" + i);
+            log.append(dictionary -> record);
+            if (i == 6) {
+                log.commit();
+            }
+        }
+
+        log.removeLast(10);
+        assertEquals(4, log.size());
+        assertEquals(kept, log.byteSize());
+        log.append(dictionary -> bytes("after"));
+        log.close();
+
+        log.open();
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals(5, records.size());
+        assertEquals("kept-3", string(records.get(3)));
+        assertEquals("after", string(records.get(4)));
+        log.close();
+    }
+
+    @Test
+    public void removeLastOfAReplacedRecordDoesNotBringBackTheOldOne() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.NONE, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("set-1"));
+        log.commit();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2")));
+        log.commit();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2-3")));
+
+        log.removeLast(1);
+        assertEquals(1, log.size());
+        log.close();
+
+        log.open();
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        assertEquals("first", string(records.get(0)));
+        log.close();
+    }
+
+    @Test
+    public void removeLastAfterTheReplacedHeadWasReadDoesNotCutBehindTheCursor() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.NONE, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("set-1"));
+        log.commit();
+        assertTrue(log.replaceLast(dictionary -> bytes("set-1-2")));
+        log.commit();
+        log.remove(1);
+
+        log.removeLast(1);
+        log.append(dictionary -> bytes("next"));
+        log.commit();
+        log.close();
+
+        log.open();
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        assertEquals("next", string(records.get(0)));
+        log.close();
+    }
+
+    @Test
+    public void matchesTheModel() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            File directory = folder.newFolder("seed-" + seed);
+            LaudspeakerEventLog log = new LaudspeakerEventLog(directory, 256, LaudspeakerDurability.NONE, logger);
+            new QueueStorageModel(log, seed, 80).run(2_000);
+        }
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws IOException {
+        LaudspeakerEventLog log = new LaudspeakerEventLog(folder.getRoot(), 4096, LaudspeakerDurability.BATCH, logger);
+        log.open();
+        log.append(dictionary -> bytes("first"));
+        log.append(dictionary -> bytes("second"));
+        log.commit();
+        long complete = segment(0).length();
+        log.append(dictionary -> bytes("third"));
+        log.close();
+
+        // A crash halfway through writing the last record
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            file.setLength(complete + 5);
+        }
+
+        log.open();
+        assertEquals(2, log.size());
+        assertEquals(complete, segment(0).length());
+        log.append(dictionary -> bytes("fourth"));
+        log.close();
+
+        log.open();
+        List<LaudspeakerQueueRecord> records = log.peek(0, 10, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals("second", string(records.get(1)));
+        assertEquals("fourth", string(records.get(2)));
+        log.close();
+    }
+
+    private File segment(int segment) {
+        return new File(folder.getRoot(), String.format("%010d.segment", segment));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(LaudspeakerQueueRecord record) {
+        return new String(record.getData(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerEventTest {
+    private final Gson serializer = LaudspeakerTypeAdapterFactory.getSerializer();
+
+    @Test
+    public void timestampIsWrittenInUtcToTheMillisecond() {
+        LaudspeakerEvent event = new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>(), 1705669413120L, UUID.randomUUID());
+
+        String json = serializer.toJson(event);
+
+        assertTrue(json, json.contains("\"timestamp\":\"2024-01-19T13:03:33.120Z\""));
+        assertEquals(1705669413120L, serializer.fromJson(json, LaudspeakerEvent.class).getTimestampMillis());
+    }
+
+    @Test
+    public void capturedEventKeepsTheCaptureTime() {
+        long before = System.currentTimeMillis();
+        LaudspeakerEvent event = new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>());
+        long after = System.currentTimeMillis();
+
+        assertTrue(event.hasTimestamp());
+        assertTrue(event.getTimestampMillis() >= before && event.getTimestampMillis() <= after);
+        assertEquals(event.getTimestampMillis(), event.getTimestamp().getTime());
+    }
+
+    @Test
+    public void eventWithoutATimestampWritesNone() {
+        LaudspeakerEvent event = new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>(), LaudspeakerEvent.NO_TIMESTAMP, UUID.randomUUID());
+
+        assertFalse(event.hasTimestamp());
+        assertNull(event.getTimestamp());
+        assertFalse(serializer.toJson(event).contains("timestamp"));
+        assertFalse(serializer.fromJson(serializer.toJson(event), LaudspeakerEvent.class).hasTimestamp());
+    }
+
+    @Test
+    public void isoDatesRoundTripAcrossCalendarEdges() {
+        long[] instants = {0L, -1L, 951782400000L, 951868799999L, 4102444799999L, 1705669413120L};
+        for (long instant : instants) {
+            String text = LaudspeakerJsonFormat.formatIsoDate(instant);
+            assertEquals(text, Long.valueOf(instant), LaudspeakerJsonFormat.parseIsoDate(text));
+        }
+        assertEquals("1969-12-31T23:59:59.999Z", LaudspeakerJsonFormat.formatIsoDate(-1L));
+        assertEquals("2000-02-29T23:59:59.999Z", LaudspeakerJsonFormat.formatIsoDate(951868799999L));
+    }
+}
@@ -0,0 +1,146 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerHistogramTest {
+    @Test
+    public void smallValuesGetABucketEach() {
+        for (int value = 0; value < 32; value++) {
+            assertEquals(value, LaudspeakerHistogram.bucketOf(value));
+            assertEquals(value, LaudspeakerHistogram.highestValueOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsAroundThePowersOfTwo() {
+        assertEquals(31, LaudspeakerHistogram.bucketOf(31));
+        assertEquals(32, LaudspeakerHistogram.bucketOf(32));
+        assertEquals(32, LaudspeakerHistogram.bucketOf(33));
+        assertEquals(33, LaudspeakerHistogram.highestValueOf(32));
+        assertEquals(47, LaudspeakerHistogram.bucketOf(63));
+        assertEquals(63, LaudspeakerHistogram.highestValueOf(47));
+        assertEquals(48, LaudspeakerHistogram.bucketOf(64));
+        assertEquals(48, LaudspeakerHistogram.bucketOf(67));
+        assertEquals(49, LaudspeakerHistogram.bucketOf(68));
+        assertEquals(LaudspeakerHistogram.BUCKET_COUNT - 1, LaudspeakerHistogram.bucketOf(LaudspeakerHistogram.MAX_VALUE));
+        assertEquals(LaudspeakerHistogram.MAX_VALUE, LaudspeakerHistogram.highestValueOf(LaudspeakerHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void bucketsFollowEachOtherWithoutGaps() {
+        for (int bucket = 0; bucket < LaudspeakerHistogram.BUCKET_COUNT - 1; bucket++) {
+            long highest = LaudspeakerHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LaudspeakerHistogram.bucketOf(highest));
+            assertEquals(bucket + 1, LaudspeakerHistogram.bucketOf(highest + 1));
+        }
+    }
+
+    @Test
+    public void bucketsAreWithinASixteenthOfTheValue() {
+        for (long value = 1; value < LaudspeakerHistogram.MAX_VALUE; value = value * 3 + 1) {
+            long highest = LaudspeakerHistogram.highestValueOf(LaudspeakerHistogram.bucketOf(value));
+            assertTrue(highest >= value);
+            assertTrue(value + " is in a bucket up to " + highest, highest - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void negativeAndTooLargeValuesAreClamped() {
+        LaudspeakerHistogram histogram = new LaudspeakerHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LaudspeakerHistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LaudspeakerHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(LaudspeakerHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfAUniformDistribution() {
+        LaudspeakerHistogram histogram = new LaudspeakerHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        LaudspeakerHistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500.5, snapshot.getMean(), 1e-9);
+        assertEquals(10, snapshot.getValueAtPercentile(1));
+        assertWithinBucket(500, snapshot.getValueAtPercentile(50));
+        assertWithinBucket(900, snapshot.getValueAtPercentile(90));
+        assertWithinBucket(990, snapshot.getValueAtPercentile(99));
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfABimodalDistribution() {
+        LaudspeakerHistogram histogram = new LaudspeakerHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5_000);
+        }
+
+        LaudspeakerHistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.getValueAtPercentile(0));
+        assertEquals(10, snapshot.getValueAtPercentile(50));
+        assertEquals(10, snapshot.getValueAtPercentile(90));
+        // The bucket of 5000 reaches past it, the recorded maximum caps it
+        assertEquals(5_000, snapshot.getValueAtPercentile(91));
+        assertEquals(5_000, snapshot.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void emptySnapshotIsZero() {
+        LaudspeakerHistogramSnapshot snapshot = new LaudspeakerHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void recordingMetricsKeepEachTypeApart() throws InterruptedException {
+        LaudspeakerRecordingMetrics metrics = new LaudspeakerRecordingMetrics();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    metrics.increment(LaudspeakerMetric.EVENTS_CAPTURED, 1);
+                    metrics.record(LaudspeakerMetric.CAPTURE_LATENCY, i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        metrics.gauge(LaudspeakerMetric.QUEUE_DEPTH, 7);
+        // Recorded with the wrong type, ignored
+        metrics.increment(LaudspeakerMetric.QUEUE_DEPTH, 1);
+        metrics.record(LaudspeakerMetric.EVENTS_SENT, 5);
+
+        LaudspeakerMetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(40_000, snapshot.getCounter(LaudspeakerMetric.EVENTS_CAPTURED));
+        assertEquals(0, snapshot.getCounter(LaudspeakerMetric.EVENTS_SENT));
+        assertEquals(7, snapshot.getGauge(LaudspeakerMetric.QUEUE_DEPTH));
+        LaudspeakerHistogramSnapshot latency = snapshot.getHistogram(LaudspeakerMetric.CAPTURE_LATENCY);
+        assertEquals(40_000, latency.getCount());
+        assertEquals(0, latency.getMin());
+        assertEquals(9_999, latency.getMax());
+        assertEquals(0, snapshot.getHistogram(LaudspeakerMetric.REQUEST_LATENCY).getCount());
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(expected + " reported as " + actual, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,71 @@
+package com.laudspeaker.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerLegacyEventsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LaudspeakerLogger logger = new LaudspeakerLogger(new LaudspeakerConfig("test-key"));
+
+    @Test
+    public void importedFilesAreNotReturnedAfterARestart() throws IOException {
+        File directory = folder.getRoot();
+        for (int i = 0; i < 5; i++) {
+            File file = new File(directory, "event-" + i + ".event");
+            write(file, "{}");
+            file.setLastModified(1_000_000L + i * 1000L);
+        }
+
+        LaudspeakerLegacyEvents legacy = new LaudspeakerLegacyEvents(directory, logger);
+        assertTrue(legacy.load());
+        List<File> chunk = legacy.next(3);
+        assertEquals(Arrays.asList("event-0.event", "event-1.event", "event-2.event"), names(chunk));
+        // The process dies after marking the chunk, before deleting its files
+        legacy.imported(chunk);
+
+        LaudspeakerLegacyEvents restarted = new LaudspeakerLegacyEvents(directory, logger);
+        assertTrue(restarted.load());
+        assertEquals(Arrays.asList("event-3.event", "event-4.event"), names(restarted.next(10)));
+        assertFalse(new File(directory, "event-0.event").exists());
+        assertFalse(restarted.hasNext());
+    }
+
+    @Test
+    public void manifestIsDeletedOnceEverythingIsImported() throws IOException {
+        File directory = folder.getRoot();
+        write(new File(directory, "a.event"), "{}");
+        LaudspeakerLegacyEvents legacy = new LaudspeakerLegacyEvents(directory, logger);
+        assertTrue(legacy.load());
+        legacy.imported(legacy.next(10));
+
+        assertFalse(new LaudspeakerLegacyEvents(directory, logger).load());
+        assertFalse(new File(directory, "legacy.manifest").exists());
+        assertFalse(new File(directory, "a.event").exists());
+    }
+
+    private static List<String> names(List<File> files) {
+        String[] names = new String[files.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = files.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.laudspeaker.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerMappedRingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LaudspeakerLogger logger = new LaudspeakerLogger(new LaudspeakerConfig("test-key"));
+
+    @Test
+    public void matchesTheModel() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            File file = new File(folder.getRoot(), "ring-" + seed);
+            LaudspeakerMappedRing ring = new LaudspeakerMappedRing(file, 1024, LaudspeakerDurability.NONE, logger);
+            new QueueStorageModel(ring, seed, 80).run(2_000);
+        }
+    }
+
+    @Test
+    public void fullRingRefusesRecordsUntilSpaceIsFreed() throws IOException {
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(folder.newFile("ring"), 64, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        int appended = 0;
+        while (ring.append(dictionary -> bytes("0123456789"))) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+        assertEquals(appended, ring.size());
+
+        ring.remove(1);
+        assertTrue(ring.append(dictionary -> bytes("last")));
+        ring.close();
+
+        ring.open();
+        List<String> records = strings(ring.peek(0, Integer.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(appended, records.size());
+        assertEquals("last", records.get(appended - 1));
+        ring.close();
+    }
+
+    @Test
+    public void replacementInterruptedBeforeTheOldRecordIsFlaggedIsFinishedOnOpen() throws IOException {
+        File file = folder.newFile("ring");
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(file, 1024, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        ring.append(dictionary -> bytes("first"));
+        ring.append(dictionary -> bytes("old"));
+        assertTrue(ring.replaceLast(dictionary -> bytes("new")));
+        ring.close();
+
+        // A crash after the tail moved past the replacement, before the old record was flagged dead
+        int old = 24 + 4 + "first".length();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(old);
+            raw.writeInt("old".length());
+        }
+
+        ring.open();
+        assertEquals(2, ring.size());
+        assertEquals(Arrays.asList("first", "new"), strings(ring.peek(0, 10, Long.MAX_VALUE)));
+        ring.close();
+    }
+
+    @Test
+    public void replacementInterruptedBeforeTheTailMovedKeepsTheOldRecord() throws IOException {
+        File file = folder.newFile("ring");
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(file, 1024, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        ring.append(dictionary -> bytes("old"));
+        ring.close();
+
+        // A crash while the replacement was written after the tail
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(24 + 4 + "old".length());
+            raw.writeInt(0x20000000 | 100);
+            raw.write(bytes("garb"));
+        }
+
+        ring.open();
+        assertEquals(Arrays.asList("old"), strings(ring.peek(0, 10, Long.MAX_VALUE)));
+        assertTrue(ring.append(dictionary -> bytes("next")));
+        ring.close();
+        ring.open();
+        assertEquals(Arrays.asList("old", "next"), strings(ring.peek(0, 10, Long.MAX_VALUE)));
+        ring.close();
+    }
+
+    @Test
+    public void appendInterruptedBeforeTheCountIsWrittenIsDropped() throws IOException {
+        File file = folder.newFile("ring");
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(file, 1024, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        ring.append(dictionary -> bytes("first"));
+        ring.append(dictionary -> bytes("second"));
+        ring.close();
+
+        // The tail moved but the count did not
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(20);
+            raw.writeInt(1);
+        }
+
+        ring.open();
+        assertEquals(1, ring.size());
+        ring.append(dictionary -> bytes("third"));
+        assertEquals(Arrays.asList("first", "third"), strings(ring.peek(0, 10, Long.MAX_VALUE)));
+        ring.close();
+    }
+
+    @Test
+    public void keepsTheRecordsWhenTheCapacityChanges() throws IOException {
+        File file = folder.newFile("ring");
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(file, 1024, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        for (int i = 0; i < 10; i++) {
+            String record = "record-" + i;
+            ring.append(dictionary -> bytes(record));
+        }
+        ring.close();
+
+        LaudspeakerMappedRing larger = new LaudspeakerMappedRing(file, 4096, LaudspeakerDurability.BATCH, logger);
+        larger.open();
+        assertEquals(10, larger.size());
+        assertEquals("record-0", strings(larger.peek(0, 1, Long.MAX_VALUE)).get(0));
+        larger.close();
+        assertEquals(24 + 4096, file.length());
+
+        // Each record takes 12 bytes, the newest ones that do not fit are dropped
+        LaudspeakerMappedRing smaller = new LaudspeakerMappedRing(file, 40, LaudspeakerDurability.BATCH, logger);
+        smaller.open();
+        assertEquals(Arrays.asList("record-0", "record-1", "record-2"), strings(smaller.peek(0, 10, Long.MAX_VALUE)));
+        smaller.close();
+    }
+
+    @Test
+    public void closeForgetsTheRecords() throws IOException {
+        LaudspeakerMappedRing ring = new LaudspeakerMappedRing(folder.newFile("ring"), 1024, LaudspeakerDurability.BATCH, logger);
+        ring.open();
+        ring.append(dictionary -> bytes("first"));
+        ring.close();
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.byteSize());
+
+        ring.open();
+        assertEquals(1, ring.size());
+        ring.close();
+    }
+
+    private static List<String> strings(List<LaudspeakerQueueRecord> records) {
+        List<String> strings = new ArrayList<>();
+        for (LaudspeakerQueueRecord record : records) {
+            strings.add(new String(record.getData(), StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
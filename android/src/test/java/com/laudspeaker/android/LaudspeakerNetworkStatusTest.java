@@ -0,0 +1,67 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerNetworkStatusTest {
+    @Test
+    public void startsWithTheStateOfTheSource() {
+        LaudspeakerNetworkStatus status = new LaudspeakerNetworkStatus(new FakeConnectivitySource(FakeConnectivitySource.CELLULAR));
+
+        assertTrue(status.isConnected());
+        assertTrue(status.isMetered());
+        assertEquals(LaudspeakerNetworkTransport.CELLULAR, status.getTransport());
+    }
+
+    @Test
+    public void listenersOnlyHearAboutChanges() {
+        FakeConnectivitySource source = new FakeConnectivitySource(LaudspeakerNetworkState.DISCONNECTED);
+        LaudspeakerNetworkStatus status = new LaudspeakerNetworkStatus(source);
+        List<LaudspeakerNetworkState> changes = new ArrayList<>();
+        status.addListener(changes::add);
+
+        source.change(FakeConnectivitySource.WIFI);
+        source.change(new LaudspeakerNetworkState(true, false, LaudspeakerNetworkTransport.WIFI));
+        source.change(FakeConnectivitySource.CELLULAR);
+        source.change(LaudspeakerNetworkState.DISCONNECTED);
+
+        assertEquals(3, changes.size());
+        assertEquals(FakeConnectivitySource.WIFI, changes.get(0));
+        assertEquals(FakeConnectivitySource.CELLULAR, changes.get(1));
+        assertEquals(LaudspeakerNetworkState.DISCONNECTED, changes.get(2));
+        assertFalse(status.isConnected());
+    }
+
+    @Test
+    public void removedListenerHearsNothing() {
+        FakeConnectivitySource source = new FakeConnectivitySource(LaudspeakerNetworkState.DISCONNECTED);
+        LaudspeakerNetworkStatus status = new LaudspeakerNetworkStatus(source);
+        List<LaudspeakerNetworkState> changes = new ArrayList<>();
+        LaudspeakerConnectivitySource.Listener listener = changes::add;
+        status.addListener(listener);
+        status.removeListener(listener);
+
+        source.change(FakeConnectivitySource.WIFI);
+
+        assertTrue(changes.isEmpty());
+        assertTrue(status.isConnected());
+    }
+
+    @Test
+    public void closeStopsFollowingTheNetworkAndKeepsTheLastState() {
+        FakeConnectivitySource source = new FakeConnectivitySource(FakeConnectivitySource.WIFI);
+        LaudspeakerNetworkStatus status = new LaudspeakerNetworkStatus(source);
+        assertTrue(source.isRegistered());
+
+        status.close();
+        source.change(LaudspeakerNetworkState.DISCONNECTED);
+
+        assertFalse(source.isRegistered());
+        assertTrue(status.isConnected());
+        assertEquals(LaudspeakerNetworkTransport.WIFI, status.getTransport());
+    }
+}
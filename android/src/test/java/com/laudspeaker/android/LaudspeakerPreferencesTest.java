@@ -0,0 +1,42 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerPreferencesTest {
+    @Test
+    public void revisionMovesForEveryInstanceOnTheSameFile() {
+        InMemoryPreferences file = new InMemoryPreferences();
+        LaudspeakerPreferences sdk = new LaudspeakerPreferences(file);
+        LaudspeakerPreferences service = new LaudspeakerPreferences(file);
+        int revision = sdk.getRevision();
+
+        service.setValue(LaudspeakerPreferences.HOST, "https://api.example.com");
+        assertNotEquals(revision, sdk.getRevision());
+        assertEquals(sdk.getRevision(), service.getRevision());
+    }
+
+    @Test
+    public void otherFilesKeepTheirRevision() {
+        LaudspeakerPreferences first = new LaudspeakerPreferences(new InMemoryPreferences());
+        LaudspeakerPreferences second = new LaudspeakerPreferences(new InMemoryPreferences());
+        int revision = first.getRevision();
+
+        second.setValue(LaudspeakerPreferences.API_KEY, "other-key");
+        assertEquals(revision, first.getRevision());
+    }
+
+    @Test
+    public void snapshotSeesAHostWrittenThroughAnotherInstance() {
+        InMemoryPreferences file = new InMemoryPreferences();
+        LaudspeakerConfig config = new LaudspeakerConfig("test-key");
+        config.setCachePreferences(new LaudspeakerPreferences(file));
+        config.getCachePreferences().setValue(LaudspeakerPreferences.HOST, "https://old.example.com");
+        LaudspeakerApi api = new LaudspeakerApi(config);
+        assertEquals("https://old.example.com", api.snapshot().getHost());
+
+        new LaudspeakerPreferences(file).setValue(LaudspeakerPreferences.HOST, "https://new.example.com");
+        assertEquals("https://new.example.com", api.snapshot().getHost());
+    }
+}
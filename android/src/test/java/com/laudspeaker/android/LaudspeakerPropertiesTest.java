@@ -0,0 +1,115 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerPropertiesTest {
+    @Test
+    public void keepsTheInsertionOrderAndTheTypes() {
+        LaudspeakerProperties properties = new LaudspeakerProperties()
+                .putString("screen", "Cart")
+                .putLong("quantity", 3)
+                .putDouble("price", 19.99)
+                .putBoolean("in_stock", true);
+
+        Map<String, Object> map = properties.toMap();
+        assertEquals(Arrays.asList("screen", "quantity", "price", "in_stock"), new ArrayList<>(map.keySet()));
+        assertEquals("Cart", map.get("screen"));
+        assertEquals(3L, map.get("quantity"));
+        assertEquals(19.99, map.get("price"));
+        assertEquals(true, map.get("in_stock"));
+        assertEquals(4, properties.size());
+    }
+
+    @Test
+    public void puttingAKeyAgainReplacesItsValue() {
+        LaudspeakerProperties properties = new LaudspeakerProperties()
+                .putString("plan", "free")
+                .putLong("seats", 1)
+                .putLong("plan", 2)
+                .putString("seats", "unlimited");
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("plan", 2L);
+        expected.put("seats", "unlimited");
+        assertEquals(expected, properties.toMap());
+        assertEquals(2, properties.size());
+    }
+
+    @Test
+    public void growsPastTheInitialCapacity() {
+        LaudspeakerProperties properties = new LaudspeakerProperties(1);
+        Map<String, Object> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            if (i % 3 == 0) {
+                properties.putString("key_" + i, "value_" + i);
+                expected.put("key_" + i, "value_" + i);
+            } else {
+                properties.putLong("key_" + i, i);
+                expected.put("key_" + i, (long) i);
+            }
+        }
+
+        assertEquals(expected, properties.toMap());
+    }
+
+    @Test
+    public void rejectsNullKeysAndValuesJsonCannotHold() {
+        LaudspeakerProperties properties = new LaudspeakerProperties();
+        try {
+            properties.putLong(null, 1);
+            fail("Expected a null key to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            properties.putDouble("ratio", Double.NaN);
+            fail("Expected NaN to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            properties.putDouble("ratio", Double.POSITIVE_INFINITY);
+            fail("Expected infinity to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, properties.size());
+    }
+
+    @Test
+    public void capturedPropertiesCannotChange() {
+        LaudspeakerProperties properties = new LaudspeakerProperties().putLong("quantity", 3);
+        new LaudspeakerEvent("add_to_cart", "customer-1", properties);
+
+        try {
+            properties.putLong("quantity", 4);
+            fail("Expected captured properties to be sealed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(3L, properties.toMap().get("quantity"));
+    }
+
+    @Test
+    public void serializeLikeTheEquivalentMap() {
+        LaudspeakerProperties properties = new LaudspeakerProperties()
+                .putString("screen", "Cart")
+                .putLong("quantity", 3)
+                .putDouble("price", 19.99)
+                .putBoolean("in_stock", false)
+                .putString("coupon", null);
+        Gson serializer = LaudspeakerTypeAdapterFactory.getSerializer();
+
+        JsonObject fromProperties = JsonParser.parseString(serializer.toJson(new LaudspeakerEvent("add_to_cart", "customer-1", properties))).getAsJsonObject();
+        JsonObject fromMap = JsonParser.parseString(serializer.toJson(new LaudspeakerEvent("add_to_cart", "customer-1", properties.toMap()))).getAsJsonObject();
+
+        assertEquals(fromMap.get("payload"), fromProperties.get("payload"));
+    }
+}
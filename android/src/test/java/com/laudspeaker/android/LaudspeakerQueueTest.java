@@ -0,0 +1,683 @@
+package com.laudspeaker.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the queue and its uploads inline on the test thread against a local MockWebServer.
+ */
+public class LaudspeakerQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private LaudspeakerConfig config;
+    private final ExecutorService executor = directExecutor();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        config = new LaudspeakerConfig("test-key");
+        config.setStoragePrefix(folder.getRoot().getAbsolutePath());
+        LaudspeakerPreferences preferences = new LaudspeakerPreferences(new InMemoryPreferences());
+        preferences.setValue(LaudspeakerPreferences.HOST, server.url("/").toString());
+        preferences.setValue(LaudspeakerPreferences.API_KEY, "test-key");
+        config.setCachePreferences(preferences);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void rejectedCompressedUploadIsSentAgainInsteadOfDropped() throws Exception {
+        config.setCompression(LaudspeakerCompression.DEFLATE_DICTIONARY);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                // A server without the dictionary cannot inflate the body
+                return request.getHeader("Content-Encoding") != null
+                        ? new MockResponse().setResponseCode(400).setBody("{\"message\":\"Invalid JSON\"}")
+                        : new MockResponse().setResponseCode(200);
+            }
+        });
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        queue.flush();
+
+        assertEquals(0, queue.size());
+        assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        RecordedRequest plain = server.takeRequest();
+        assertNull(plain.getHeader("Content-Encoding"));
+        assertTrue(plain.getBody().readUtf8().contains("product_viewed"));
+        queue.stop();
+    }
+
+    @Test
+    public void importsLegacyEventFilesOnce() throws Exception {
+        File directory = new File(folder.getRoot(), "test-key");
+        directory.mkdirs();
+        for (int i = 0; i < 3; i++) {
+            LaudspeakerEvent event = new LaudspeakerEvent("legacy_" + i, "customer-1", new HashMap<>());
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, event.getEventId() + ".event")), StandardCharsets.UTF_8)) {
+                config.getSerializer().toJson(event, writer);
+            }
+        }
+
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        assertEquals(3, queue.size());
+        String[] left = directory.list((dir, name) -> name.endsWith(".event") || name.equals("legacy.manifest"));
+        assertEquals(0, left.length);
+        queue.stop();
+
+        LaudspeakerQueue restarted = newQueue();
+        restarted.start();
+        assertEquals(3, restarted.size());
+        restarted.stop();
+    }
+
+    @Test
+    public void batchThatCannotBeRenamedIsNotSent() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        // A non-empty directory where the first batch file goes makes the rename fail
+        File blocker = new File(folder.getRoot(), "test-key/sealed/batch-0.json");
+        assertTrue(new File(blocker, "file").mkdirs());
+
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        queue.flush();
+        assertEquals(0, server.getRequestCount());
+        assertEquals(1, queue.size());
+        assertFalse(new File(folder.getRoot(), "test-key/sealed/sealing.json").exists());
+
+        queue.flush();
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void evictingWhileABatchUploadsSendsEveryEventOnce() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        config.setFlushAt(100);
+        config.setMaxQueueSize(10);
+        List<Runnable> uploads = new ArrayList<>();
+        LaudspeakerQueue queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor, executorOf(uploads::add));
+        queue.start();
+        for (int i = 0; i < 10; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        assertEquals(1, uploads.size());
+
+        // Overflows while the batch is uploading, the first event is dropped
+        queue.add(new LaudspeakerEvent("event_10", "customer-1", new HashMap<>()));
+        uploads.remove(0).run();
+        assertEquals(1, queue.size());
+        queue.flush();
+        uploads.remove(0).run();
+        assertEquals(0, queue.size());
+
+        String first = server.takeRequest().getBody().readUtf8();
+        String second = server.takeRequest().getBody().readUtf8();
+        assertTrue(first.contains("event_9"));
+        assertFalse(second.contains("event_9"));
+        assertTrue(second.contains("event_10"));
+        queue.stop();
+    }
+
+    @Test
+    public void eventsDroppedFromAFullStagingBufferFinishTheirTraces() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        config.setTraceSampleRate(1.0);
+        config.setStagingCapacity(2);
+        LaudspeakerQueue queue = newQueue();
+        // Nothing drains the staging buffer before the queue starts, all but the first two overflow
+        for (int i = 0; i < 300; i++) {
+            capture(queue, new LaudspeakerEvent("overflow_" + i, "customer-1", new HashMap<>()));
+        }
+        List<LaudspeakerEventTrace> traces = config.getTracer().getCompletedTraces();
+        assertFalse(traces.isEmpty());
+        assertTrue(traces.get(traces.size() - 1).isDropped());
+        assertEquals("overflow_299", traces.get(traces.size() - 1).getEvent());
+
+        queue.start();
+        LaudspeakerEvent traced = new LaudspeakerEvent("traced", "customer-1", new HashMap<>());
+        capture(queue, traced);
+        queue.flush();
+
+        traces = config.getTracer().getCompletedTraces();
+        LaudspeakerEventTrace last = traces.get(traces.size() - 1);
+        assertEquals(traced.getEventId().toString(), last.getEventId());
+        assertFalse(last.isDropped());
+        assertTrue(last.getAckedNanos() > 0);
+        queue.stop();
+    }
+
+    @Test
+    public void eventsSubmittedBeforeTheStorageOpensAreKept() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        config.setStagingCapacity(2);
+        config.setOverflowPolicy(LaudspeakerOverflowPolicy.SUBMIT_TO_EXECUTOR);
+        config.setFlushAt(100);
+        LaudspeakerQueue queue = newQueue();
+        for (int i = 0; i < 10; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+
+        queue.start();
+        assertEquals(10, queue.size());
+        queue.flush();
+        assertEquals(0, queue.size());
+        String body = server.takeRequest().getBody().readUtf8();
+        for (int i = 1; i < 10; i++) {
+            assertTrue(body.indexOf("event_" + (i - 1)) < body.indexOf("event_" + i));
+        }
+        queue.stop();
+    }
+
+    @Test
+    public void drainTellsWhenAnotherQueueHoldsTheStorage() {
+        LaudspeakerQueue app = newQueue();
+        app.start();
+        app.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+
+        LaudspeakerQueue job = newQueue();
+        job.start();
+        List<Boolean> claimed = new ArrayList<>();
+        job.drain((storageClaimed, remainingEvents) -> claimed.add(storageClaimed));
+        assertEquals(Arrays.asList(false), claimed);
+        job.stop();
+
+        assertEquals(1, app.size());
+        app.stop();
+    }
+
+    @Test
+    public void unacknowledgedBatchIsSentAgainWithItsSequenceAfterARestart() throws Exception {
+        AtomicBoolean offline = new AtomicBoolean(true);
+        server.setDispatcher(disconnectingWhile(offline));
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        for (int i = 0; i < 3; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        RecordedRequest failed = server.takeRequest();
+        queue.stop();
+
+        offline.set(false);
+        int attempts = server.getRequestCount();
+        LaudspeakerQueue restarted = newQueue();
+        restarted.start();
+        assertEquals(3, restarted.size());
+        restarted.flush();
+        assertEquals(0, restarted.size());
+        assertEquals(attempts + 1, server.getRequestCount());
+        RecordedRequest resent = lastRequest();
+        assertNotNull(failed.getHeader("Idempotency-Key"));
+        assertEquals(failed.getHeader("Idempotency-Key"), resent.getHeader("Idempotency-Key"));
+        assertEquals(failed.getHeader("X-Laudspeaker-Batch-Sequence"), resent.getHeader("X-Laudspeaker-Batch-Sequence"));
+        restarted.stop();
+    }
+
+    @Test
+    public void acknowledgedBatchLeftInTheStorageIsNotSentAgain() throws Exception {
+        AtomicBoolean offline = new AtomicBoolean(true);
+        server.setDispatcher(disconnectingWhile(offline));
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        for (int i = 0; i < 3; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        long sequence = Long.parseLong(server.takeRequest().getHeader("X-Laudspeaker-Batch-Sequence"));
+        queue.stop();
+        // The acknowledgement was journaled, the process died before the records were removed
+        new LaudspeakerBatchJournal(new File(folder.getRoot(), "test-key/batches.journal"), config.getDurability()).acked(sequence);
+
+        offline.set(false);
+        int attempts = server.getRequestCount();
+        LaudspeakerQueue restarted = newQueue();
+        restarted.start();
+        assertEquals(0, restarted.size());
+        restarted.flush();
+        assertEquals(attempts, server.getRequestCount());
+        restarted.stop();
+    }
+
+    @Test
+    public void batchAcknowledgedBehindAnUnacknowledgedOneIsNotSentAgain() throws Exception {
+        AtomicBoolean offline = new AtomicBoolean(true);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return offline.get() && request.getBody().readUtf8().contains("event_0")
+                        ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+                        : new MockResponse().setResponseCode(200);
+            }
+        });
+        config.setFlushAt(100);
+        config.setMaxBatchSize(2);
+        config.setMaxInFlightBatches(2);
+        List<Runnable> uploads = new ArrayList<>();
+        LaudspeakerQueue queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor, executorOf(uploads::add));
+        queue.start();
+        for (int i = 0; i < 4; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        assertEquals(2, uploads.size());
+        // The second batch is acknowledged, its records stay until the first one is
+        uploads.get(1).run();
+        uploads.get(0).run();
+        assertEquals(4, queue.size());
+        queue.stop();
+
+        offline.set(false);
+        int attempts = server.getRequestCount();
+        LaudspeakerQueue restarted = newQueue();
+        restarted.start();
+        restarted.flush();
+        assertEquals(0, restarted.size());
+        assertEquals(attempts + 1, server.getRequestCount());
+        String body = lastRequest().getBody().readUtf8();
+        assertTrue(body.contains("event_0") && body.contains("event_1"));
+        assertFalse(body.contains("event_2"));
+        restarted.stop();
+    }
+
+    @Test
+    public void journaledBatchThatLostItsFirstEventIsSealedAnew() throws Exception {
+        config.setMaxQueueSize(3);
+        AtomicBoolean offline = new AtomicBoolean(true);
+        server.setDispatcher(disconnectingWhile(offline));
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        for (int i = 0; i < 3; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        RecordedRequest failed = server.takeRequest();
+        // Evicts event_0 from under the journaled batch
+        queue.add(new LaudspeakerEvent("event_3", "customer-1", new HashMap<>()));
+        queue.stop();
+
+        offline.set(false);
+        LaudspeakerQueue restarted = newQueue();
+        restarted.start();
+        assertEquals(3, restarted.size());
+        restarted.flush();
+        assertEquals(0, restarted.size());
+        RecordedRequest resealed = lastRequest();
+        String body = resealed.getBody().readUtf8();
+        assertFalse(body.contains("event_0"));
+        assertTrue(body.contains("event_1") && body.contains("event_2") && body.contains("event_3"));
+        assertNotEquals(failed.getHeader("Idempotency-Key"), resealed.getHeader("Idempotency-Key"));
+        restarted.stop();
+    }
+
+    @Test
+    public void wakeupIsArmedOnceWhileEventsWaitToBeSent() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(false)));
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+        assertEquals(0, scheduler.scheduled().size());
+
+        for (int i = 0; i < 5; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        assertEquals(0, server.getRequestCount());
+        assertEquals(1, scheduler.scheduled().size());
+        assertEquals(TimeUnit.SECONDS.toNanos(config.getFlushIntervalSeconds()), scheduler.pending().get(0).getDelay(TimeUnit.NANOSECONDS));
+
+        // Too few events for the flush policy until the wakeup finds a reason to flush
+        config.setFlushAt(1);
+        scheduler.runNext();
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, queue.size());
+        assertEquals(1, scheduler.scheduled().size());
+        assertTrue(scheduler.pending().isEmpty());
+        queue.stop();
+    }
+
+    @Test
+    public void wakeupIsCancelledOnceNothingWaits() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(false)));
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        ManualScheduledExecutor.Task wakeup = scheduler.pending().get(0);
+
+        queue.flush();
+        assertEquals(0, queue.size());
+        assertTrue(wakeup.isCancelled());
+        assertTrue(scheduler.pending().isEmpty());
+
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        assertEquals(1, scheduler.pending().size());
+        queue.stop();
+        assertTrue(scheduler.pending().isEmpty());
+    }
+
+    @Test
+    public void wakeupFiresAtTheEndOfTheBackoff() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(true)));
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+
+        queue.flush();
+        assertEquals(1, queue.size());
+        List<ManualScheduledExecutor.Task> pending = scheduler.pending();
+        assertEquals(1, pending.size());
+        // The first retry waits 5 seconds, past the flush interval
+        long delay = pending.get(0).getDelay(TimeUnit.NANOSECONDS);
+        assertTrue(delay > TimeUnit.SECONDS.toNanos(4) && delay <= TimeUnit.SECONDS.toNanos(5));
+        queue.stop();
+    }
+
+    @Test
+    public void offlineQueueUploadsOnceTheNetworkIsBack() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(false)));
+        FakeConnectivitySource source = new FakeConnectivitySource(LaudspeakerNetworkState.DISCONNECTED);
+        config.setNetworkStatus(new LaudspeakerNetworkStatus(source));
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+
+        for (int i = 0; i < 3; i++) {
+            queue.add(new LaudspeakerEvent("event_" + i, "customer-1", new HashMap<>()));
+        }
+        queue.flush();
+        assertEquals(0, server.getRequestCount());
+        assertEquals(3, queue.size());
+        // Nothing can be sent, no wakeup polls for the network either
+        assertTrue(scheduler.pending().isEmpty());
+
+        source.change(FakeConnectivitySource.WIFI);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void goingOfflineCancelsTheWakeup() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource(FakeConnectivitySource.WIFI);
+        config.setNetworkStatus(new LaudspeakerNetworkStatus(source));
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        assertEquals(1, scheduler.pending().size());
+
+        source.change(LaudspeakerNetworkState.DISCONNECTED);
+        assertTrue(scheduler.pending().isEmpty());
+
+        queue.stop();
+        source.change(FakeConnectivitySource.WIFI);
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void backoffFollowsTheMonotonicClockNotTheWallClock() throws Exception {
+        AtomicBoolean offline = new AtomicBoolean(true);
+        server.setDispatcher(disconnectingWhile(offline));
+        ManualClock clock = new ManualClock();
+        config.setDateProvider(clock);
+        config.setFlushAt(1);
+        ManualScheduledExecutor scheduler = newScheduler();
+        LaudspeakerQueue queue = newQueue(scheduler);
+        queue.start();
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-1", new HashMap<>()));
+        int attempts = server.getRequestCount();
+        assertTrue(attempts > 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(5), scheduler.pending().get(0).getDelay(TimeUnit.NANOSECONDS));
+
+        // The user moves the clock an hour ahead, the backoff still has 5 seconds to go
+        offline.set(false);
+        clock.millis += TimeUnit.HOURS.toMillis(1);
+        scheduler.runNext();
+        assertEquals(attempts, server.getRequestCount());
+        assertEquals(TimeUnit.SECONDS.toNanos(5), scheduler.pending().get(0).getDelay(TimeUnit.NANOSECONDS));
+
+        clock.nanos += TimeUnit.SECONDS.toNanos(5);
+        scheduler.runNext();
+        assertEquals(attempts + 1, server.getRequestCount());
+        assertEquals(0, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void consecutiveSetsOfOneCustomerAreMerged() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(false)));
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "free", "seats", 1L)));
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "team", "locale", "en")));
+        LaudspeakerEvent latest = new LaudspeakerEvent("$set", "customer-1", payload("plan", "pro"));
+        queue.add(latest);
+        assertEquals(1, queue.size());
+
+        queue.flush();
+        String body = server.takeRequest().getBody().readUtf8();
+        assertEquals(1, body.split("\\$set", -1).length - 1);
+        assertTrue(body, body.contains("\"plan\":\"pro\""));
+        assertTrue(body, body.contains("\"seats\":1"));
+        assertTrue(body, body.contains("\"locale\":\"en\""));
+        assertTrue(body, body.contains(latest.getEventId().toString()));
+        queue.stop();
+    }
+
+    @Test
+    public void updatesAreOnlyMergedWithTheUpdateRightBeforeThem() throws Exception {
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "free")));
+        queue.add(new LaudspeakerEvent("$set", "customer-2", payload("plan", "free")));
+        assertEquals(2, queue.size());
+        queue.add(new LaudspeakerEvent("product_viewed", "customer-2", payload("screen", "Home")));
+        queue.add(new LaudspeakerEvent("$set", "customer-2", payload("plan", "pro")));
+        assertEquals(4, queue.size());
+        queue.add(new LaudspeakerEvent("$identify", "customer-2", payload("distinct_id", "a")));
+        queue.add(new LaudspeakerEvent("$identify", "customer-2", payload("distinct_id", "b")));
+        assertEquals(6, queue.size());
+        queue.add(new LaudspeakerEvent("$identify", "customer-2", payload("distinct_id", "b", "email", "b@example.com")));
+        assertEquals(6, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void updateSealedIntoABatchIsNotRewritten() throws Exception {
+        server.setDispatcher(disconnectingWhile(new AtomicBoolean(true)));
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "free")));
+        queue.flush();
+        assertTrue(server.getRequestCount() > 0);
+
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "pro")));
+        assertEquals(2, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void updatesAreKeptApartWhenCoalescingIsOff() throws Exception {
+        config.setCoalesceUpdates(false);
+        LaudspeakerQueue queue = newQueue();
+        queue.start();
+
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "free")));
+        queue.add(new LaudspeakerEvent("$set", "customer-1", payload("plan", "pro")));
+        assertEquals(2, queue.size());
+        queue.stop();
+    }
+
+    /**
+     * Drops the connection after reading each request while offline is set, which the queue
+     * treats as a network failure and keeps the batch.
+     */
+    private static Dispatcher disconnectingWhile(AtomicBoolean offline) {
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return offline.get()
+                        ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+                        : new MockResponse().setResponseCode(200);
+            }
+        };
+    }
+
+    private static Map<String, Object> payload(Object... keysAndValues) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            payload.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return payload;
+    }
+
+    private RecordedRequest lastRequest() throws InterruptedException {
+        RecordedRequest last = null;
+        RecordedRequest request;
+        while ((request = server.takeRequest(0, TimeUnit.SECONDS)) != null) {
+            last = request;
+        }
+        return last;
+    }
+
+    private void capture(LaudspeakerQueue queue, LaudspeakerEvent event) {
+        config.getTracer().captured(event);
+        queue.add(event);
+    }
+
+    private static final class ManualClock extends LaudspeakerDateProvider {
+        long millis = 1705669413120L;
+        long nanos = 0;
+
+        @Override
+        public long currentTimeMillis() {
+            return millis;
+        }
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+    }
+
+    private ManualScheduledExecutor newScheduler() {
+        // Stages inline, the wakeup is the only scheduled task then
+        config.setGroupCommitWindowMillis(0);
+        return new ManualScheduledExecutor();
+    }
+
+    private LaudspeakerQueue newQueue() {
+        return newQueue(executor);
+    }
+
+    private LaudspeakerQueue newQueue(ExecutorService executor) {
+        return new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor, executor);
+    }
+
+    private static ExecutorService directExecutor() {
+        return executorOf(Runnable::run);
+    }
+
+    private static ExecutorService executorOf(Consumer<Runnable> execute) {
+        return new AbstractExecutorService() {
+            private volatile boolean shutdown = false;
+
+            @Override
+            public void execute(Runnable command) {
+                execute.accept(command);
+            }
+
+            @Override
+            public void shutdown() {
+                shutdown = true;
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                shutdown = true;
+                return new ArrayList<>();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerStagingBufferTest {
+    @Test
+    public void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(2, new LaudspeakerStagingBuffer<Integer>(0).capacity());
+        assertEquals(4, new LaudspeakerStagingBuffer<Integer>(3).capacity());
+        assertEquals(8, new LaudspeakerStagingBuffer<Integer>(8).capacity());
+        assertEquals(1024, new LaudspeakerStagingBuffer<Integer>(1000).capacity());
+    }
+
+    @Test
+    public void fullBufferRefusesUntilAnElementIsTaken() {
+        LaudspeakerStagingBuffer<Integer> buffer = new LaudspeakerStagingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void keepsTheOrderAcrossManyLaps() {
+        LaudspeakerStagingBuffer<Integer> buffer = new LaudspeakerStagingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int lap = 0; lap < 1000; lap++) {
+            // Fill partway and take less than was put in, so head and tail wrap at different slots
+            for (int i = 0; i < 1 + lap % 4 && buffer.offer(next); i++) {
+                next++;
+            }
+            for (int i = 0; i < 1 + lap % 3; i++) {
+                Integer element = buffer.poll();
+                if (element == null) {
+                    break;
+                }
+                assertEquals(Integer.valueOf(expected++), element);
+            }
+        }
+        List<Integer> rest = new ArrayList<>();
+        assertEquals(next - expected, buffer.drain(rest::add, Integer.MAX_VALUE));
+        for (Integer element : rest) {
+            assertEquals(Integer.valueOf(expected++), element);
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test
+    public void keepsEachProducersOrder() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        LaudspeakerStagingBuffer<long[]> buffer = new LaudspeakerStagingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] element = buffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[(int) element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(buffer.poll());
+        for (long count : next) {
+            assertEquals(perProducer, count);
+        }
+    }
+}
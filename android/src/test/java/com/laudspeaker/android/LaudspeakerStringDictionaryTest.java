@@ -0,0 +1,80 @@
+package com.laudspeaker.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerStringDictionaryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reloadsInternedStrings() throws IOException {
+        File file = new File(folder.getRoot(), "0000000000.dict");
+        LaudspeakerStringDictionary dictionary = new LaudspeakerStringDictionary(file);
+        assertEquals(0, dictionary.intern("alpha"));
+        assertEquals(1, dictionary.intern("beta"));
+        assertEquals(0, dictionary.intern("alpha"));
+        dictionary.close();
+
+        LaudspeakerStringDictionary reloaded = new LaudspeakerStringDictionary(file);
+        assertEquals("alpha", reloaded.get(0));
+        assertEquals("beta", reloaded.get(1));
+        assertEquals(1, reloaded.intern("beta"));
+        reloaded.close();
+    }
+
+    @Test
+    public void dropsTornEntryBeforeInterningMore() throws IOException {
+        File file = new File(folder.getRoot(), "0000000000.dict");
+        LaudspeakerStringDictionary dictionary = new LaudspeakerStringDictionary(file);
+        dictionary.intern("alpha");
+        dictionary.intern("beta");
+        dictionary.close();
+        long complete = file.length();
+
+        // A crash halfway through an entry: the length says 100 bytes, only 3 made it
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(complete);
+            output.writeInt(100);
+            output.write(new byte[]{'a', 'b', 'c'});
+        }
+
+        LaudspeakerStringDictionary recovered = new LaudspeakerStringDictionary(file);
+        assertEquals(2, recovered.intern("gamma"));
+        assertEquals(3, recovered.intern("delta"));
+        recovered.close();
+
+        LaudspeakerStringDictionary reloaded = new LaudspeakerStringDictionary(file);
+        assertEquals("alpha", reloaded.get(0));
+        assertEquals("beta", reloaded.get(1));
+        assertEquals("gamma", reloaded.get(2));
+        assertEquals("delta", reloaded.get(3));
+        reloaded.close();
+    }
+
+    @Test
+    public void rejectsLengthPastTheEndOfTheFile() throws IOException {
+        File file = new File(folder.getRoot(), "0000000000.dict");
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.writeInt(Integer.MAX_VALUE);
+            output.writeInt(-1);
+        }
+
+        LaudspeakerStringDictionary dictionary = new LaudspeakerStringDictionary(file);
+        assertEquals(0, dictionary.intern("alpha"));
+        dictionary.close();
+        assertEquals(4 + "alpha".length(), file.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownIdThrows() throws IOException {
+        new LaudspeakerStringDictionary(null).get(0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.laudspeaker.android;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LaudspeakerUuidV7Test {
+    @Test
+    public void hasTheVersionAndVariantBits() {
+        long now = System.currentTimeMillis();
+        UUID uuid = LaudspeakerUuidV7.next(now);
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertTrue(LaudspeakerUuidV7.timestampMillis(uuid) >= now);
+        assertEquals(-1, LaudspeakerUuidV7.timestampMillis(UUID.randomUUID()));
+    }
+
+    @Test
+    public void idsOfOneThreadOnlyGoUp() {
+        long now = System.currentTimeMillis();
+        UUID previous = LaudspeakerUuidV7.next(now);
+        // More than the 4096 IDs the counter holds within one millisecond
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = LaudspeakerUuidV7.next(now);
+            assertTrue(next.getMostSignificantBits() > previous.getMostSignificantBits());
+            assertEquals(7, next.version());
+            previous = next;
+        }
+        assertTrue(LaudspeakerUuidV7.timestampMillis(previous) > now);
+    }
+
+    @Test
+    public void clockGoingBackDoesNotReorderIds() {
+        UUID before = LaudspeakerUuidV7.next();
+        UUID after = LaudspeakerUuidV7.next(System.currentTimeMillis() - 60_000);
+        assertTrue(after.getMostSignificantBits() > before.getMostSignificantBits());
+        assertTrue(LaudspeakerUuidV7.timestampMillis(after) >= LaudspeakerUuidV7.timestampMillis(before));
+    }
+
+    @Test
+    public void threadsDoNotShareTheCounter() throws InterruptedException {
+        LaudspeakerUuidV7.next(System.currentTimeMillis() + 60_000);
+        AtomicLong timestamp = new AtomicLong();
+        Thread thread = new Thread(() -> timestamp.set(LaudspeakerUuidV7.timestampMillis(LaudspeakerUuidV7.next(1_000))));
+        thread.start();
+        thread.join();
+        assertEquals(1_000, timestamp.get());
+    }
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws InterruptedException {
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        long now = System.currentTimeMillis();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(LaudspeakerUuidV7.next(now));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, ids.size());
+    }
+}
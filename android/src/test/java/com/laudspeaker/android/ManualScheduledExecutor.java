@@ -0,0 +1,165 @@
+package com.laudspeaker.android;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs submitted tasks inline on the calling thread and keeps scheduled ones until the test
+ * runs them, so timed flushes happen exactly when a test asks for them.
+ */
+class ManualScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private final List<Task> scheduled = new ArrayList<>();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @return every task scheduled so far, including cancelled and finished ones.
+     */
+    List<Task> scheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @return the tasks that were neither cancelled nor run yet.
+     */
+    List<Task> pending() {
+        List<Task> pending = new ArrayList<>();
+        for (Task task : scheduled) {
+            if (!task.isDone()) {
+                pending.add(task);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Runs the pending task with the shortest delay, whatever that delay is.
+     */
+    void runNext() {
+        Task next = null;
+        for (Task task : pending()) {
+            if (next == null || task.compareTo(next) < 0) {
+                next = task;
+            }
+        }
+        if (next == null) {
+            throw new IllegalStateException("Nothing is scheduled");
+        }
+        next.run();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        command.run();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        Task task = new Task(command, unit.toNanos(delay));
+        scheduled.add(task);
+        return task;
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        return new ArrayList<>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    static final class Task implements ScheduledFuture<Object> {
+        private final Runnable command;
+        private final long delayNanos;
+        private boolean cancelled = false;
+        private boolean done = false;
+
+        Task(Runnable command, long delayNanos) {
+            this.command = command;
+            this.delayNanos = delayNanos;
+        }
+
+        void run() {
+            done = true;
+            command.run();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(delayNanos, o.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.laudspeaker.android;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs random operations against a LaudspeakerQueueStorage and a plain list of the records it
+ * should hold, checking the size, the byte size and the peeked records after every step.
+ */
+final class QueueStorageModel {
+    private final LaudspeakerQueueStorage storage;
+    private final Random random;
+    private final int maxRecordLength;
+    private final List<String> records = new ArrayList<>();
+    private int next = 0;
+
+    QueueStorageModel(LaudspeakerQueueStorage storage, long seed, int maxRecordLength) {
+        this.storage = storage;
+        this.random = new Random(seed);
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    void run(int steps) throws IOException {
+        storage.open();
+        for (int step = 0; step < steps; step++) {
+            String operation = step(random.nextInt(100));
+            String context = "step " + step + " (" + operation + ")";
+            assertEquals(context, records.size(), storage.size());
+            assertEquals(context, byteSize(records), storage.byteSize());
+        }
+        assertEquals(records, strings(storage.peek(0, Integer.MAX_VALUE, Long.MAX_VALUE)));
+        storage.close();
+    }
+
+    private String step(int roll) throws IOException {
+        if (roll < 40) {
+            String record = nextRecord();
+            if (storage.append(dictionary -> bytes(record))) {
+                records.add(record);
+            }
+            return "append";
+        }
+        if (roll < 50) {
+            storage.commit();
+            return "commit";
+        }
+        if (roll < 60) {
+            int offset = random.nextInt(records.size() + 1);
+            int maxRecords = 1 + random.nextInt(records.size() + 1);
+            long maxBytes = random.nextInt(4 * maxRecordLength);
+            assertEquals(expectedPeek(offset, maxRecords, maxBytes), strings(storage.peek(offset, maxRecords, maxBytes)));
+            return "peek";
+        }
+        if (roll < 70) {
+            int n = random.nextInt(Math.min(records.size(), 8) + 1);
+            storage.remove(n);
+            records.subList(0, n).clear();
+            return "remove " + n;
+        }
+        if (roll < 82) {
+            String record = nextRecord();
+            if (storage.replaceLast(dictionary -> bytes(record))) {
+                records.set(records.size() - 1, record);
+            }
+            return "replaceLast";
+        }
+        if (roll < 88) {
+            int n = random.nextInt(Math.min(records.size(), 4) + 1);
+            storage.removeLast(n);
+            records.subList(records.size() - n, records.size()).clear();
+            return "removeLast " + n;
+        }
+        storage.close();
+        storage.open();
+        return "reopen";
+    }
+
+    private List<String> expectedPeek(int offset, int maxRecords, long maxBytes) {
+        List<String> expected = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < Math.min(maxRecords, records.size() - offset); i++) {
+            String record = records.get(offset + i);
+            total += 4 + bytes(record).length;
+            if (i > 0 && total > maxBytes) {
+                break;
+            }
+            expected.add(record);
+        }
+        return expected;
+    }
+
+    private String nextRecord() {
+        StringBuilder record = new StringBuilder("r").append(next++).append(':');
+        int length = random.nextInt(maxRecordLength);
+        while (record.length() < length) {
+            record.append((char) ('a' + random.nextInt(26)));
+        }
+        return record.toString();
+    }
+
+    private static long byteSize(List<String> records) {
+        long total = 0;
+        for (String record : records) {
+            total += 4 + bytes(record).length;
+        }
+        return total;
+    }
+
+    private static List<String> strings(List<LaudspeakerQueueRecord> records) {
+        List<String> strings = new ArrayList<>(records.size());
+        for (LaudspeakerQueueRecord record : records) {
+            strings.add(new String(record.getData(), StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static byte[] bytes(String record) {
+        return record.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,133 @@
+package com.laudspeaker.android;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map-backed SharedPreferences for running the SDK in JVM unit tests and benchmarks.
+ * Only string values are kept, which is all LaudspeakerPreferences stores.
+ */
+public class InMemoryPreferences implements SharedPreferences {
+    private final Map<String, Object> values = new HashMap<>();
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        return values.containsKey(key) ? (String) values.get(key) : defValue;
+    }
+
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        return defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new Editor() {
+            private final Map<String, Object> puts = new HashMap<>();
+            private final Set<String> removals = new HashSet<>();
+            private boolean clear = false;
+
+            @Override
+            public Editor putString(String key, String value) {
+                puts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                removals.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                apply();
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                synchronized (InMemoryPreferences.this) {
+                    if (clear) {
+                        values.clear();
+                    }
+                    values.keySet().removeAll(removals);
+                    values.putAll(puts);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+    }
+}
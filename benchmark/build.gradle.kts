@@ -0,0 +1,42 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+sourceSets {
+    main {
+        java {
+            // The SDK sources run on a plain JVM, minus the entry points that need Firebase
+            srcDir("../android/src/main/java")
+            exclude("com/laudspeaker/android/Laudspeaker.java")
+            exclude("com/laudspeaker/android/LaudspeakerAndroid.java")
+        }
+    }
+    named("jmh") {
+        java {
+            // InMemoryPreferences, shared with the SDK unit tests
+            srcDir("../android/src/testFixtures/java")
+        }
+    }
+}
+
+dependencies {
+    implementation("org.robolectric:android-all:14-robolectric-10818077")
+    implementation("com.google.code.gson:gson:2.10")
+    implementation("com.squareup.okhttp3:okhttp:3.12.12") // The version socket.io-client brings in
+    jmh("com.squareup.okhttp3:mockwebserver:3.12.12")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,70 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of LaudspeakerQueue.add on the capturing threads while the queue thread drains the
+ * staging buffer into the storage, with several app threads capturing at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class AddBenchmark {
+    private static final int EVENTS = 64;
+
+    @Param({"DROP_NEWEST", "SUBMIT_TO_EXECUTOR"})
+    public LaudspeakerOverflowPolicy overflowPolicy;
+
+    private File directory;
+    private ExecutorService executor;
+    private LaudspeakerQueue queue;
+    private List<LaudspeakerEvent> events;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-add");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, "http://localhost");
+        config.setOverflowPolicy(overflowPolicy);
+        // Bounded storage so a long run does not fill the disk, the oldest events are dropped
+        config.setMaxQueueSize(10_000);
+        executor = Executors.newSingleThreadExecutor(new LaudspeakerThreadFactory("LaudspeakerQueueThread"));
+        queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor);
+        queue.start();
+        events = BenchmarkFixtures.events(EVENTS);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        queue.stop();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void add(Cursor cursor) {
+        queue.add(events.get(cursor.next++ & (EVENTS - 1)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Time to upload a backlog left by a long offline period, against a server that answers every
+ * batch after a fixed round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BacklogDrainBenchmark {
+    @Param({"1", "4", "8"})
+    public int maxInFlightBatches;
+
+    @Param({"5000"})
+    public int queuedEvents;
+
+    @Param({"50"})
+    public int roundTripMillis;
+
+    private MockWebServer server;
+    private File directory;
+    private ExecutorService executor;
+    private LaudspeakerQueue queue;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setBodyLimit(0);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200).setHeadersDelay(roundTripMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+    }
+
+    @Setup(Level.Invocation)
+    public void queueBacklog() throws IOException, InterruptedException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-drain");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, server.url("/").toString());
+        config.setMaxInFlightBatches(maxInFlightBatches);
+
+        // Written straight into the storage, the queue recovers it on start
+        LaudspeakerEventCodec codec = new LaudspeakerEventCodec(config.getSerializer());
+        LaudspeakerQueueStorage storage = new LaudspeakerEventLog(new File(directory, BenchmarkFixtures.API_KEY), config.getSegmentSizeBytes(), config.getDurability(), config.getLogger());
+        storage.open();
+        for (LaudspeakerEvent event : BenchmarkFixtures.events(queuedEvents)) {
+            storage.append(dictionary -> codec.encode(event, dictionary));
+        }
+        storage.close();
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor);
+        queue.start();
+        while (queue.size() < queuedEvents) {
+            Thread.sleep(1);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopQueue() throws InterruptedException {
+        queue.stop();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int drain() throws InterruptedException {
+        queue.flush();
+        while (queue.size() > 0) {
+            Thread.sleep(1);
+        }
+        return server.getRequestCount();
+    }
+}
@@ -0,0 +1,63 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a full batch from the head of the storage and sealing it into an upload-ready file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchAssemblyBenchmark {
+    @Param({"SEGMENTED_LOG", "MAPPED_RING"})
+    public LaudspeakerQueueStorageType storageType;
+
+    @Param({"50"})
+    public int batchSize;
+
+    private File directory;
+    private ExecutorService executor;
+    private LaudspeakerQueue queue;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-batch");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, "http://localhost");
+        config.setQueueStorageType(storageType);
+        config.setMaxBatchSize(batchSize);
+        executor = BenchmarkFixtures.directExecutor();
+        queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor);
+        queue.start();
+        for (LaudspeakerEvent event : BenchmarkFixtures.events(batchSize)) {
+            queue.add(event);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        queue.stop();
+        executor.shutdown();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long seal() throws IOException {
+        LaudspeakerSealedBatch batch = queue.sealBatch();
+        long bytes = batch.getByteCount();
+        batch.delete();
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+package com.laudspeaker.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared setup for the benchmarks: a queue configuration backed by a temporary directory,
+ * representative capture properties and an executor that runs queue work on the calling thread.
+ */
+public final class BenchmarkFixtures {
+    public static final String API_KEY = "benchmark-key";
+    public static final String CUSTOMER_ID = "6c1b8f0e-customer";
+    public static final String FCM_TOKEN = "fcm-token-0123456789abcdef";
+
+    private static final LaudspeakerFlushPolicy MANUAL_FLUSH = new LaudspeakerFlushPolicy() {
+        @Override
+        public boolean shouldFlush(int queuedEvents, long queuedBytes, long oldestEventAgeMillis, int maxBatchSize) {
+            return false;
+        }
+
+        @Override
+        public int batchSize(int maxBatchSize) {
+            return maxBatchSize;
+        }
+
+        @Override
+        public void onBatchSent(int events, long bytes, long roundTripMillis) {
+        }
+
+        @Override
+        public void onBatchFailed(int events, long bytes) {
+        }
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    public static LaudspeakerConfig config(File storageDir, String host) {
+        LaudspeakerConfig config = new LaudspeakerConfig(API_KEY);
+        config.setStoragePrefix(storageDir.getAbsolutePath());
+        // Flushes are driven by the benchmarks, never by the queue itself
+        config.setFlushPolicy(MANUAL_FLUSH);
+        config.setFlushIntervalSeconds(3600);
+        config.setMaxQueueSize(Integer.MAX_VALUE);
+
+        LaudspeakerPreferences preferences = new LaudspeakerPreferences(new InMemoryPreferences());
+        preferences.setValue(LaudspeakerPreferences.HOST, host);
+        preferences.setValue(LaudspeakerPreferences.API_KEY, API_KEY);
+        preferences.setValue(LaudspeakerPreferences.FCM_TOKEN, FCM_TOKEN);
+        config.setCachePreferences(preferences);
+        return config;
+    }
+
+    /**
+     * Properties of a typical product event, roughly 300 bytes as JSON.
+     */
+    public static Map<String, Object> properties(int i) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("screen", "ProductDetails");
+        properties.put("product_id", "sku-" + (i % 500));
+        properties.put("price", 19.99 + (i % 7));
+        properties.put("quantity", i % 5 + 1);
+        properties.put("in_stock", i % 3 != 0);
+        properties.put("currency", "USD");
+        properties.put("session_length_ms", 1000L * i);
+        properties.put("tags", Arrays.asList("summer", "sale", "featured"));
+        Map<String, Object> campaign = new HashMap<>();
+        campaign.put("source", "push");
+        campaign.put("campaign_id", "c-" + (i % 20));
+        properties.put("campaign", campaign);
+        return properties;
+    }
+
+    public static List<LaudspeakerEvent> events(int n) {
+        List<LaudspeakerEvent> events = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            events.add(new LaudspeakerEvent(i % 10 == 0 ? "$opened" : "product_viewed", CUSTOMER_ID, properties(i)));
+        }
+        return events;
+    }
+
+    public static File createTempDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Runs queue tasks inline so a benchmark invocation covers the whole add or flush.
+     */
+    public static ExecutorService directExecutor() {
+        return new AbstractExecutorService() {
+            private volatile boolean shutdown = false;
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+
+            @Override
+            public void shutdown() {
+                shutdown = true;
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                shutdown = true;
+                return new ArrayList<>();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return true;
+            }
+        };
+    }
+}
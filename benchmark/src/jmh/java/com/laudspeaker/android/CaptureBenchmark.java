@@ -0,0 +1,43 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The part of Laudspeaker.capture that runs on the caller thread: merging the properties
+ * into a fresh map and building the event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CaptureBenchmark {
+    private Map<String, Object> properties;
+
+    @Setup
+    public void setup() {
+        properties = BenchmarkFixtures.properties(1);
+    }
+
+    @Benchmark
+    public Map<String, Object> buildProperties() {
+        Map<String, Object> props = new HashMap<>();
+        props.putAll(properties);
+        return props;
+    }
+
+    @Benchmark
+    public LaudspeakerEvent buildEvent() {
+        Map<String, Object> props = new HashMap<>();
+        props.putAll(properties);
+        return new LaudspeakerEvent("product_viewed", BenchmarkFixtures.CUSTOMER_ID, props);
+    }
+}
@@ -0,0 +1,95 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second written to the storage for each durability mode, either committed one at a
+ * time or in groups of GROUP_SIZE as the queue thread does after draining a burst.
+ * fsync is free on tmpfs, point java.io.tmpdir at the device under test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DurabilityBenchmark {
+    static final int GROUP_SIZE = 32;
+    private static final int EVENTS = 64;
+
+    @Param({"NONE", "BATCH", "EVERY_EVENT"})
+    public LaudspeakerDurability durability;
+
+    @Param({"SEGMENTED_LOG", "MAPPED_RING"})
+    public LaudspeakerQueueStorageType storageType;
+
+    private File directory;
+    private LaudspeakerQueueStorage storage;
+    private LaudspeakerEventCodec codec;
+    private List<LaudspeakerEvent> events;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-durability");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, "http://localhost");
+        switch (storageType) {
+            case MAPPED_RING:
+                storage = new LaudspeakerMappedRing(new File(directory, "queue.ring"), config.getRingCapacityBytes(), durability, config.getLogger());
+                break;
+            case SEGMENTED_LOG:
+            default:
+                storage = new LaudspeakerEventLog(directory, config.getSegmentSizeBytes(), durability, config.getLogger());
+                break;
+        }
+        storage.open();
+        codec = new LaudspeakerEventCodec(config.getSerializer());
+        events = BenchmarkFixtures.events(EVENTS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.close();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void single() throws IOException {
+        append();
+        storage.commit();
+        trim();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GROUP_SIZE)
+    public void group() throws IOException {
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            append();
+        }
+        storage.commit();
+        trim();
+    }
+
+    private void append() throws IOException {
+        LaudspeakerEvent event = events.get(next++ & (EVENTS - 1));
+        storage.append(dictionary -> codec.encode(event, dictionary));
+    }
+
+    private void trim() throws IOException {
+        // Consume from the head as uploads would, keeping the storage at a steady size
+        if (storage.size() >= 1000) {
+            storage.remove(storage.size() - GROUP_SIZE);
+        }
+    }
+}
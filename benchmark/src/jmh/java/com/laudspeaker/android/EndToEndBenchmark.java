@@ -0,0 +1,100 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Events per second through the whole pipeline: building the event, queueing it, sealing the
+ * batch and uploading it to a local MockWebServer. Queue work runs inline on the benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EndToEndBenchmark.BATCH_SIZE)
+public class EndToEndBenchmark {
+    static final int BATCH_SIZE = 50;
+
+    @Param({"SEGMENTED_LOG", "MAPPED_RING"})
+    public LaudspeakerQueueStorageType storageType;
+
+    @Param({"NONE", "GZIP"})
+    public LaudspeakerCompression compression;
+
+    private MockWebServer server;
+    private File directory;
+    private ExecutorService executor;
+    private LaudspeakerQueue queue;
+    private Map<String, Object> properties;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        // Recorded requests are kept by the server, only their headers are needed
+        server.setBodyLimit(0);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        server.start();
+
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-e2e");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, server.url("/").toString());
+        config.setQueueStorageType(storageType);
+        config.setCompression(compression);
+        config.setMaxBatchSize(BATCH_SIZE);
+        executor = BenchmarkFixtures.directExecutor();
+        // Uploads run inline as well, one batch at a time
+        queue = new LaudspeakerQueue(config, new LaudspeakerApi(config), LaudspeakerApiEndpoint.EVENT, config.getStoragePrefix(), executor, executor);
+        queue.start();
+        properties = BenchmarkFixtures.properties(1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drainRecordedRequests() throws InterruptedException {
+        while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+            // Keep the server's request log from growing across iterations
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        queue.stop();
+        executor.shutdown();
+        server.shutdown();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int captureAndSend() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Map<String, Object> props = new HashMap<>();
+            props.putAll(properties);
+            queue.add(new LaudspeakerEvent("product_viewed", BenchmarkFixtures.CUSTOMER_ID, props));
+        }
+        queue.flush();
+        return queue.size();
+    }
+}
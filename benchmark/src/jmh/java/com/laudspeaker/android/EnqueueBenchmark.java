@@ -0,0 +1,72 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding an event and appending it to the queue storage as a group of its own. A batch is consumed from the head
+ * whenever a full one is queued, as the uploader would, so the storage stays at a steady size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnqueueBenchmark {
+    private static final int EVENTS = 64;
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"SEGMENTED_LOG", "MAPPED_RING"})
+    public LaudspeakerQueueStorageType storageType;
+
+    private File directory;
+    private LaudspeakerQueueStorage storage;
+    private LaudspeakerEventCodec codec;
+    private List<LaudspeakerEvent> events;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-enqueue");
+        LaudspeakerConfig config = BenchmarkFixtures.config(directory, "http://localhost");
+        switch (storageType) {
+            case MAPPED_RING:
+                storage = new LaudspeakerMappedRing(new File(directory, "queue.ring"), config.getRingCapacityBytes(), config.getDurability(), config.getLogger());
+                break;
+            case SEGMENTED_LOG:
+            default:
+                storage = new LaudspeakerEventLog(directory, config.getSegmentSizeBytes(), config.getDurability(), config.getLogger());
+                break;
+        }
+        storage.open();
+        codec = new LaudspeakerEventCodec(config.getSerializer());
+        events = BenchmarkFixtures.events(EVENTS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.close();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean append() throws IOException {
+        LaudspeakerEvent event = events.get(next++ & (EVENTS - 1));
+        boolean appended = storage.append(dictionary -> codec.encode(event, dictionary));
+        storage.commit();
+        if (storage.size() >= BATCH_SIZE) {
+            storage.remove(BATCH_SIZE);
+        }
+        return appended;
+    }
+}
@@ -0,0 +1,46 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a latency and a counter the way the capture path does, from several threads
+ * at once. Recording should show no allocation in gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class MetricsBenchmark {
+    private final LaudspeakerMetrics noop = new LaudspeakerNoopMetrics();
+    private final LaudspeakerMetrics recording = new LaudspeakerRecordingMetrics();
+
+    @State(Scope.Thread)
+    public static class Latency {
+        long next = 1;
+    }
+
+    @Benchmark
+    public void noop(Latency latency) {
+        record(noop, latency);
+    }
+
+    @Benchmark
+    public void recording(Latency latency) {
+        record(recording, latency);
+    }
+
+    private static void record(LaudspeakerMetrics metrics, Latency latency) {
+        // Spread over the buckets of a few microseconds to a few milliseconds
+        latency.next = latency.next * 6364136223846793005L + 1442695040888963407L;
+        metrics.increment(LaudspeakerMetric.EVENTS_CAPTURED, 1);
+        metrics.record(LaudspeakerMetric.CAPTURE_LATENCY, 1000 + (latency.next >>> 42));
+    }
+}
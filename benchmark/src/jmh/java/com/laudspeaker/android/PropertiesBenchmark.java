@@ -0,0 +1,59 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A numeric telemetry event captured as a Map and as LaudspeakerProperties, then encoded into a
+ * queue record. Run with -prof gc to compare the allocation per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PropertiesBenchmark {
+    private LaudspeakerEventCodec codec;
+    private long frame = 0;
+
+    @Setup
+    public void setup() {
+        codec = new LaudspeakerEventCodec(LaudspeakerTypeAdapterFactory.getSerializer());
+    }
+
+    @Benchmark
+    public byte[] map() throws IOException {
+        long i = frame++;
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("frame", i);
+        properties.put("fps", 60 - (i & 3));
+        properties.put("frame_ms", 16.6 + (i & 7));
+        properties.put("gpu_ms", 9.1 + (i & 3));
+        properties.put("draw_calls", 1200 + (i & 63));
+        properties.put("vsync", (i & 1) == 0);
+        Map<String, Object> merged = new HashMap<>();
+        merged.putAll(properties);
+        return codec.encode(new LaudspeakerEvent("frame_stats", BenchmarkFixtures.CUSTOMER_ID, merged), null);
+    }
+
+    @Benchmark
+    public byte[] properties() throws IOException {
+        long i = frame++;
+        LaudspeakerProperties properties = new LaudspeakerProperties(6)
+                .putLong("frame", i)
+                .putLong("fps", 60 - (i & 3))
+                .putDouble("frame_ms", 16.6 + (i & 7))
+                .putDouble("gpu_ms", 9.1 + (i & 3))
+                .putLong("draw_calls", 1200 + (i & 63))
+                .putBoolean("vsync", (i & 1) == 0);
+        return codec.encode(new LaudspeakerEvent("frame_stats", BenchmarkFixtures.CUSTOMER_ID, properties), null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.laudspeaker.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to reopen the queue storage after a restart with a backlog of queued events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecoveryBenchmark {
+    @Param({"SEGMENTED_LOG", "MAPPED_RING"})
+    public LaudspeakerQueueStorageType storageType;
+
+    @Param({"10000"})
+    public int queuedEvents;
+
+    private File directory;
+    private LaudspeakerConfig config;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-recovery");
+        config = BenchmarkFixtures.config(directory, "http://localhost");
+        config.setRingCapacityBytes(16 * 1024 * 1024);
+        LaudspeakerEventCodec codec = new LaudspeakerEventCodec(config.getSerializer());
+        List<LaudspeakerEvent> events = BenchmarkFixtures.events(queuedEvents);
+        LaudspeakerQueueStorage storage = open();
+        for (LaudspeakerEvent event : events) {
+            storage.append(dictionary -> codec.encode(event, dictionary));
+        }
+        storage.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int reopen() {
+        LaudspeakerQueueStorage storage = open();
+        int size = storage.size();
+        storage.close();
+        return size;
+    }
+
+    private LaudspeakerQueueStorage open() {
+        LaudspeakerQueueStorage storage;
+        switch (storageType) {
+            case MAPPED_RING:
+                storage = new LaudspeakerMappedRing(new File(directory, "queue.ring"), config.getRingCapacityBytes(), config.getDurability(), config.getLogger());
+                break;
+            case SEGMENTED_LOG:
+            default:
+                storage = new LaudspeakerEventLog(directory, config.getSegmentSizeBytes(), config.getDurability(), config.getLogger());
+                break;
+        }
+        try {
+            storage.open();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return storage;
+    }
+}
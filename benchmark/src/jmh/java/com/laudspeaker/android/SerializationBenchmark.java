@@ -0,0 +1,95 @@
+package com.laudspeaker.android;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event encoding costs: the Gson wire format, the binary queue record and the
+ * conversion of a queue record back to the wire format at send time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+    private static final int EVENTS = 64;
+
+    private File directory;
+    private Gson serializer;
+    private TypeAdapter<LaudspeakerEvent> adapter;
+    private LaudspeakerEventCodec codec;
+    private LaudspeakerStringDictionary dictionary;
+    private List<LaudspeakerEvent> events;
+    private byte[][] records;
+    private CharArrayWriter buffer;
+    private JsonWriter jsonWriter;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkFixtures.createTempDirectory("laudspeaker-serialization");
+        serializer = LaudspeakerTypeAdapterFactory.getSerializer();
+        adapter = serializer.getAdapter(LaudspeakerEvent.class);
+        codec = new LaudspeakerEventCodec(serializer);
+        dictionary = new LaudspeakerStringDictionary(new File(directory, "0000000000.dict"));
+        events = BenchmarkFixtures.events(EVENTS);
+        records = new byte[EVENTS][];
+        for (int i = 0; i < EVENTS; i++) {
+            records[i] = codec.encode(events.get(i), dictionary);
+        }
+        buffer = new CharArrayWriter(1024);
+        jsonWriter = new JsonWriter(buffer);
+        jsonWriter.setLenient(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dictionary.close();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String gsonToJson() {
+        return serializer.toJson(nextEvent());
+    }
+
+    @Benchmark
+    public int adapterWrite() throws IOException {
+        buffer.reset();
+        adapter.write(jsonWriter, nextEvent());
+        jsonWriter.flush();
+        return buffer.size();
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws IOException {
+        return codec.encode(nextEvent(), dictionary);
+    }
+
+    @Benchmark
+    public int binaryToJson() throws IOException {
+        buffer.reset();
+        codec.writeJson(records[next++ & (EVENTS - 1)], dictionary, jsonWriter, BenchmarkFixtures.FCM_TOKEN);
+        jsonWriter.flush();
+        return buffer.size();
+    }
+
+    private LaudspeakerEvent nextEvent() {
+        return events.get(next++ & (EVENTS - 1));
+    }
+}